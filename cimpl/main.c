@@ -8,6 +8,8 @@
 #define MIN_DICT_SIZE 512
 #define WORD_SIZE 5
 #define ALPHABET_SIZE 26
+// Longest words whose primes value fits a long long, 101^9 < 2^63 < 101^10
+#define MAX_PRIMES_WORD_SIZE 9
 #define TEST_SIZE 10000
 #define NUMBER_OF_TESTS 10
 #define CORES 4
@@ -17,34 +19,41 @@ typedef struct
     // A clue consist of a letter (char) and a type.
     // type == -1 lettter not on word
     // type == 0: letter on unknown position
-    // type == n: letter in nth position (with 1 <= n <= WORD_SIZE)
+    // type == n: letter in nth position (with 1 <= n <= wordSize)
     int type;
     char letter;
 } clue;
 
-typedef int (*solver)(int *, clue *, int, int);
+typedef struct
+{
+    char *words;          // words back to back, word i starts at words[i * wordSize]
+    long long *wordValues; // product of the primes of the letters of each word
+    int *fullDictIndexes; // 0, 1, ..., size - 1
+    int size;             // number of words
+    int wordSize;         // letters per word
+    int threads;          // threads of the multithreaded solver
+    clue *sortedClues;    // every clue, the ones matching less words first
+    int sortedCluesSize;
+} dictionary;
+
+typedef int (*solver)(const dictionary *, int *, clue *, int, int);
 
 typedef struct
 {
+    const dictionary *dict;
     int *result;    // result array
     clue *clues;    // clues
     int cluesSize;  // clues size
-    int maxLength;  // max length of result (unused so far)
+    int maxLength;  // max length of the partition result (the whole result can't be longer)
     int startIndex; // starting index for the partition
     int endIndex;   // ending index for the partition
-    int *n;         // initial n, cant return int from here so it must be used as in-out arg
+    int n;          // number of matches written to result
 } thread_data;
 
 char letters[ALPHABET_SIZE] = {'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h', 'i', 'j', 'k', 'l', 'm', 'n', 'o', 'p', 'q', 'r', 's',
                                't', 'u', 'v', 'w', 'x', 'y', 'z'};
 int primes[ALPHABET_SIZE] = {2, 3, 5, 7, 11, 13, 17, 19, 23, 29, 31, 37, 41, 43, 47, 53, 59, 61, 67, 71, 73,
                              79, 83, 89, 97, 101};
-clue *sortedClues;
-char **dict;
-int *fullDictIndexes;
-int *wordValues;
-int dictSize;
-int fullCluesSize = ALPHABET_SIZE * (WORD_SIZE + 2);
 int defaultCluesSize = 4;
 clue defaultClues[4] = {
     [0].type = -1,
@@ -56,115 +65,192 @@ clue defaultClues[4] = {
     [3].type = 0,
     [3].letter = 's'};
 
-int setup();
-int applyClue(int *resultIndexes, int *dictIndexes, int wordListSize, clue clue);
+dictionary *setup(const char *path);
+dictionary *wordleInit(const char *words, int size, int wordSize, int threads);
+void wordleFree(dictionary *dict);
+int wordleSolve(dictionary *dict, int *result, const int *types, const char *clueLetters, int cluesSize, int maxLength);
+int wordleSolveMultithread(dictionary *dict, int *result, const int *types, const char *clueLetters, int cluesSize,
+                           int maxLength);
+void wordleSolveBatch(dictionary *dict, int *result, int *counts, const int *types, const char *clueLetters,
+                      const int *cluesSizes, int queries, int maxLength, int stride);
+int applyClue(const dictionary *dict, int *resultIndexes, int *dictIndexes, int wordListSize, clue clue);
 void sortClues(clue *clues, int orderArray[], int cluesSize);
-void test(int test_size, int number_of_tests, solver solver, char *solverName);
-void printResults(clue *clues, int clueSize, int *result, int n, int maxLines);
+void test(const dictionary *dict, int test_size, int number_of_tests, solver solver, char *solverName);
+void printResults(const dictionary *dict, clue *clues, int clueSize, int *result, int n, int maxLines);
 void printClue(clue c);
-int solveOptimized(int *result, clue *clues, int cluesSize, int maxLength);
+int solveOptimized(const dictionary *dict, int *result, clue *clues, int cluesSize, int maxLength);
 void *solveThread(void *rawData);
-int solveOptimizedMultithread(int *result, clue *clues, int cluesSize, int maxLength);
+int solveOptimizedMultithread(const dictionary *dict, int *result, clue *clues, int cluesSize, int maxLength);
 
+// Built with -DWORDLE_LIBRARY the file is the native backend of the Java tool (see Makefile and NativeBackend.java),
+// the wordle* functions are its entry points
+#ifndef WORDLE_LIBRARY
 int main(int argc, char const *argv[])
 {
-    if (setup())
+    dictionary *dict = setup("./../dict.txt");
+    if (dict == NULL)
     {
         printf("Data preprocessing failed!");
         return EXIT_FAILURE;
     }
 
-    // test(TEST_SIZE, NUMBER_OF_TESTS, &solveOptimized, "Optimized single-thread solver");
-    test(TEST_SIZE, NUMBER_OF_TESTS, &solveOptimizedMultithread, "Optimized multithreaded solver");
+    // test(dict, TEST_SIZE, NUMBER_OF_TESTS, &solveOptimized, "Optimized single-thread solver");
+    test(dict, TEST_SIZE, NUMBER_OF_TESTS, &solveOptimizedMultithread, "Optimized multithreaded solver");
 
+    wordleFree(dict);
     return EXIT_SUCCESS;
 }
+#endif
 
-int setup()
+dictionary *setup(const char *path)
 {
     // Part 1. Reads the dictionary and puts it inside the words array
 
     int bytes = -1, lineCount = 0, currentDictSize = MIN_DICT_SIZE;
     size_t len;
     char *line = NULL;
-    FILE *dictFile = fopen("./../dict.txt", "r");
+    FILE *dictFile = fopen(path, "r");
     if (dictFile == NULL)
     {
-        printf("Couldn't find dictionary at path: ./../dict.txt\n");
-        return 1;
+        printf("Couldn't find dictionary at path: %s\n", path);
+        return NULL;
     }
 
-    dict = (char **)malloc(currentDictSize * sizeof(char *));
+    char *words = (char *)malloc(currentDictSize * WORD_SIZE * sizeof(char));
     while ((bytes = getline(&line, &len, dictFile)) != -1)
     {
         if (lineCount >= currentDictSize)
         {
             currentDictSize *= 2;
-            dict = (char **)realloc(dict, currentDictSize * sizeof(char *));
+            words = (char *)realloc(words, currentDictSize * WORD_SIZE * sizeof(char));
         }
-        dict[lineCount] = (char *)malloc(WORD_SIZE * sizeof(char));
-        memcpy(dict[lineCount], line, WORD_SIZE);
+        memcpy(&words[lineCount * WORD_SIZE], line, WORD_SIZE);
         lineCount++;
     }
-    dictSize = lineCount;
+    free(line);
     fclose(dictFile);
 
-    fullDictIndexes = (int *)malloc(dictSize * sizeof(int));
-    for (int i = 0; i < dictSize; i++)
-        fullDictIndexes[i] = i;
+    dictionary *dict = wordleInit(words, lineCount, WORD_SIZE, CORES);
+    free(words);
+    return dict;
+}
+
+// Parts 2 and 3 of the setup, for a dictionary already read. The words are copied
+// Returns NULL for words longer than MAX_PRIMES_WORD_SIZE, their values wouldn't fit
+dictionary *wordleInit(const char *words, int size, int wordSize, int threads)
+{
+    if (wordSize <= 0 || wordSize > MAX_PRIMES_WORD_SIZE)
+        return NULL;
+    dictionary *dict = (dictionary *)malloc(sizeof(dictionary));
+    dict->size = size;
+    dict->wordSize = wordSize;
+    dict->threads = threads < 1 ? 1 : threads;
+    dict->words = (char *)malloc((size_t)size * wordSize * sizeof(char));
+    memcpy(dict->words, words, (size_t)size * wordSize);
+
+    dict->fullDictIndexes = (int *)malloc(size * sizeof(int));
+    for (int i = 0; i < size; i++)
+        dict->fullDictIndexes[i] = i;
 
     // 2. Create the WordValues array
-    wordValues = (int *)malloc(dictSize * sizeof(int));
-    for (int i = 0; i < dictSize; i++)
+    dict->wordValues = (long long *)malloc(size * sizeof(long long));
+    for (int i = 0; i < size; i++)
     {
-        wordValues[i] = 1;
-        for (int j = 0; j < WORD_SIZE; j++)
+        dict->wordValues[i] = 1;
+        for (int j = 0; j < wordSize; j++)
         {
-            wordValues[i] *= primes[dict[i][j] - 97];
+            dict->wordValues[i] *= primes[dict->words[i * wordSize + j] - 97];
         }
     }
 
     // Part 3. Generates all possible clues and sorts them by how many matches criteria
     // Less matches -> first in list (when applied they shrink the list a lot)
-    int cluesSize = ALPHABET_SIZE * (WORD_SIZE + 2);
-    int clueFilterSizes[cluesSize];
-    sortedClues = (clue *)malloc(cluesSize * sizeof(clue));
+    int cluesSize = ALPHABET_SIZE * (wordSize + 2);
+    int *clueFilterSizes = (int *)malloc(cluesSize * sizeof(int));
+    int *results = (int *)malloc(size * sizeof(int));
+    dict->sortedClues = (clue *)malloc(cluesSize * sizeof(clue));
+    dict->sortedCluesSize = cluesSize;
 
-    for (int type = -1; type <= WORD_SIZE; type++)
+    for (int type = -1; type <= wordSize; type++)
     {
         for (char letter = 'a'; letter <= 'z'; letter++)
         {
             int index = (type + 1) * ALPHABET_SIZE + (letter - 97);
-            sortedClues[index].type = type;
-            sortedClues[index].letter = letter;
-            int resultsSize, *results;
-            results = (int *)malloc(dictSize * sizeof(int));
-
-            resultsSize = applyClue(results, fullDictIndexes, dictSize, sortedClues[index]);
-            clueFilterSizes[index] = resultsSize;
-            free(results);
+            dict->sortedClues[index].type = type;
+            dict->sortedClues[index].letter = letter;
+            clueFilterSizes[index] = applyClue(dict, results, dict->fullDictIndexes, size, dict->sortedClues[index]);
         }
     }
+    free(results);
 
     // short the clues array with relation to clueFilterSizes
-    sortClues(sortedClues, clueFilterSizes, cluesSize);
+    sortClues(dict->sortedClues, clueFilterSizes, cluesSize);
+    free(clueFilterSizes);
 
-    return 0;
+    return dict;
+}
+
+void wordleFree(dictionary *dict)
+{
+    free(dict->words);
+    free(dict->wordValues);
+    free(dict->fullDictIndexes);
+    free(dict->sortedClues);
+    free(dict);
+}
+
+// Entry points of the library: clues as parallel arrays of types and letters, result as dictionary indexes
+int wordleSolve(dictionary *dict, int *result, const int *types, const char *clueLetters, int cluesSize, int maxLength)
+{
+    clue clues[cluesSize];
+    for (int i = 0; i < cluesSize; i++)
+    {
+        clues[i].type = types[i];
+        clues[i].letter = clueLetters[i];
+    }
+    return solveOptimized(dict, result, clues, cluesSize, maxLength);
+}
+
+int wordleSolveMultithread(dictionary *dict, int *result, const int *types, const char *clueLetters, int cluesSize,
+                           int maxLength)
+{
+    clue clues[cluesSize];
+    for (int i = 0; i < cluesSize; i++)
+    {
+        clues[i].type = types[i];
+        clues[i].letter = clueLetters[i];
+    }
+    return solveOptimizedMultithread(dict, result, clues, cluesSize, maxLength);
+}
+
+// Solves queries clue lists in a single call, the clues of all of them back to back (cluesSizes[q] each). Query q
+// writes its matches to result[q * stride] and how many to counts[q], stride must be at least min(size, maxLength)
+void wordleSolveBatch(dictionary *dict, int *result, int *counts, const int *types, const char *clueLetters,
+                      const int *cluesSizes, int queries, int maxLength, int stride)
+{
+    int first = 0;
+    for (int q = 0; q < queries; q++)
+    {
+        counts[q] = wordleSolve(dict, &result[(size_t)q * stride], &types[first], &clueLetters[first], cluesSizes[q],
+                                maxLength);
+        first += cluesSizes[q];
+    }
 }
 
 // applyClue() uses an array of dictionary indexes dictIndexes and its size,
 // and puts in the sub-array resultIndexes all the dictionary indexes of the dictionary
 // words that match the clue given.
 // it return the size of the resultIndexes array
-int applyClue(int *resultIndexes, int *dictIndexes, int wordListSize, clue clue)
+int applyClue(const dictionary *dict, int *resultIndexes, int *dictIndexes, int wordListSize, clue clue)
 {
-    int n = 0, wordValue = 0;
+    int n = 0;
+    long long wordValue = 0;
     char *word;
 
     for (int i = 0; i < wordListSize; i++)
     {
-        word = dict[dictIndexes[i]];
-        wordValue = wordValues[dictIndexes[i]];
+        word = &dict->words[dictIndexes[i] * dict->wordSize];
+        wordValue = dict->wordValues[dictIndexes[i]];
         switch (clue.type)
         {
         case -1:
@@ -213,124 +299,96 @@ void sortClues(clue *clues, int orderArray[], int cluesSize)
     }
 }
 
-// Applies clues consecutively to the dictionary with the wordValues computed beforehand in setup()
-int solveOptimized(int *result, clue *clues, int cluesSize, int maxLength)
+// Applies the clues to the indexes of the range of words (n of them, starting at the first one), in the order of
+// sortedClues. Matches stay in dictionary order, so with maxLength > 0 only the first maxLength are written to result.
+// Heap buffers instead of arrays on the stack, the library runs on JVM threads with small stacks
+static int applyClues(const dictionary *dict, int *result, int first, int n, clue *clues, int cluesSize, int maxLength)
 {
-    int n = dictSize;
-    int lastResult[dictSize];
+    int *lastResult = (int *)malloc((n > 0 ? n : 1) * sizeof(int));
+    int *nextResult = (int *)malloc((n > 0 ? n : 1) * sizeof(int));
 
-    // Initialize result to full dictionary indexes. We dont want to modify fullDictIndexes since lastResult is changed later
-    memcpy(lastResult, fullDictIndexes, dictSize * sizeof(int));
+    // Initialize lastResult to the dictionary indexes of the range. We dont want to modify fullDictIndexes since
+    // lastResult is changed later
+    memcpy(lastResult, &dict->fullDictIndexes[first], n * sizeof(int));
 
-    for (int i = 0; i < fullCluesSize; i++)
+    for (int i = 0; i < dict->sortedCluesSize; i++)
     {
         // check if clue is in clues[] array. Can this be optimized?
         for (int j = 0; j < cluesSize; j++)
         {
-            if ((clues[j].type == sortedClues[i].type) && (clues[j].letter == sortedClues[i].letter))
+            if ((clues[j].type == dict->sortedClues[i].type) && (clues[j].letter == dict->sortedClues[i].letter))
             {
-                n = applyClue(result, lastResult, n, clues[j]);
-                memcpy(lastResult, result, n * sizeof(int));
-                /*
-                    printf("\n----------------\nj = %d\n", j);
-                    printClue(clues[j]);
-                    printf("\n");
-                    printf("%d) %s", lastResult[0], dict[result[0]]);
-                    for (int k = 1; k < 50; k++)
-                    {
-                        printf("\t%d) %s", lastResult[k], dict[lastResult[k]]);
-                    }
-                    printf("\nWORD 0: %s\n", dict[0]);
-                    printf("\nn = %d\n----------------\n", n);
-                */
-                continue; // next clue
+                n = applyClue(dict, nextResult, lastResult, n, clues[j]);
+                int *swap = lastResult;
+                lastResult = nextResult;
+                nextResult = swap;
+                break; // next clue
             }
         }
     }
-
+    if (maxLength > 0 && n > maxLength)
+        n = maxLength;
+    memcpy(result, lastResult, n * sizeof(int));
+    free(lastResult);
+    free(nextResult);
     return n;
 }
 
+// Applies clues consecutively to the dictionary with the wordValues computed beforehand in setup()
+int solveOptimized(const dictionary *dict, int *result, clue *clues, int cluesSize, int maxLength)
+{
+    return applyClues(dict, result, 0, dict->size, clues, cluesSize, maxLength);
+}
+
 void *solveThread(void *rawData)
 {
     thread_data *data = rawData;
-    int lastResult[dictSize];
-
-    // Initialize result to all dictionary indexes in the range
-    memcpy(lastResult, fullDictIndexes, *(data->n) * sizeof(int));
-
-    for (int i = 0; i < fullCluesSize; i++)
-    {
-        // check if clue is in clues[] array. Can this be optimized?
-        for (int j = 0; j < data->cluesSize; j++)
-        {
-            if ((data->clues[j].type == sortedClues[i].type) && (data->clues[j].letter == sortedClues[i].letter))
-            {
-                *(data->n) = applyClue(data->result, lastResult, *(data->n), data->clues[j]);
-                memcpy(lastResult, data->result, *(data->n) * sizeof(int));
-                /*
-                    printf("\n----------------\nj = %d\n", j);
-                    printClue(clues[j]);
-                    printf("\n");
-                    printf("%d) %s", lastResult[0], dict[result[0]]);
-                    for (int k = 1; k < 50; k++)
-                    {
-                        printf("\t%d) %s", lastResult[k], dict[lastResult[k]]);
-                    }
-                    printf("\nWORD 0: %s\n", dict[0]);
-                    printf("\nn = %d\n----------------\n", n);
-                */
-                continue; // next clue
-            }
-        }
-    }
-    return EXIT_SUCCESS;
+    data->n = applyClues(data->dict, data->result, data->startIndex, data->endIndex - data->startIndex, data->clues,
+                         data->cluesSize, data->maxLength);
+    return NULL;
 }
 
-int solveOptimizedMultithread(int *result, clue *clues, int cluesSize, int maxLength)
+int solveOptimizedMultithread(const dictionary *dict, int *result, clue *clues, int cluesSize, int maxLength)
 {
-    pthread_t threads[CORES];
-    thread_data args[CORES];
-    int partitionSize = dictSize / CORES; // TODO: refine this so it works when dictSize % CORES != 0
+    int threads = dict->threads;
+    pthread_t thread[threads];
+    thread_data args[threads];
+    int partitionSize = (dict->size + threads - 1) / threads; // the last partition takes the rest
     int n = 0;
-    int **resultSizes = (int **)malloc(CORES * sizeof(int *));
-    int **partialResults = (int **)malloc(CORES * sizeof(int *)); // an array of int* for partial results
 
-    for (int i = 0; i < CORES; i++)
+    for (int i = 0; i < threads; i++)
     {
-        partialResults[i] = (int *)malloc(partitionSize * sizeof(int)); // allocate enough memory for partitionSize entries
-        resultSizes[i] = (int *)malloc(sizeof(int));                    // allocate enough memory for partitionSize entries
-        args[i].result = partialResults[i];
+        args[i].dict = dict;
         args[i].clues = clues; // clues is not written to in the method so it is thread-safe to pass the same array to all threads
         args[i].cluesSize = cluesSize;
         args[i].maxLength = maxLength;
-        args[i].startIndex = partitionSize * i;
-        args[i].endIndex = partitionSize * (i + 1);
-        args[i].n = resultSizes[i];
-        pthread_create(&threads[i], NULL, solveThread, (void *)&args[i]);
+        args[i].startIndex = partitionSize * i < dict->size ? partitionSize * i : dict->size;
+        args[i].endIndex = partitionSize * (i + 1) < dict->size ? partitionSize * (i + 1) : dict->size;
+        args[i].result = (int *)malloc((args[i].endIndex - args[i].startIndex + 1) * sizeof(int)); // partial results
+        args[i].n = 0;
+        pthread_create(&thread[i], NULL, solveThread, (void *)&args[i]);
     }
 
-    for (int i = 0; i < CORES; i++)
+    for (int i = 0; i < threads; i++)
     {
-        pthread_join(threads[i], NULL); // Esperamos a que todos los threads acaben
+        pthread_join(thread[i], NULL); // Esperamos a que todos los threads acaben
     }
 
-    for (int i = 0; i < CORES; i++)
+    for (int i = 0; i < threads; i++)
     {
-        // Combine the results
-        n += *(resultSizes[i]); // add the n up
-        // put all the integers found in partial results to the result array starting at the last position
-        memcpy(&result[n], partialResults[i], *(resultSizes[i]) * sizeof(int));
-        free(resultSizes[i]);
+        // Combine the results in partition order, after the ones already copied
+        int count = maxLength > 0 && n + args[i].n > maxLength ? maxLength - n : args[i].n;
+        memcpy(&result[n], args[i].result, count * sizeof(int));
+        n += count;
+        free(args[i].result);
     }
-    free(resultSizes);
     return n;
 }
 
-void test(int test_size, int number_of_tests, solver solver, char *solverName)
+void test(const dictionary *dict, int test_size, int number_of_tests, solver solver, char *solverName)
 {
-    int *result = (int *)malloc(dictSize * sizeof(int));
-    int n;
+    int *result = (int *)malloc(dict->size * sizeof(int));
+    int n = 0;
     printf("--- REPEATED ITERATIONS TEST ---\n"
            "--- %s ---\n\n"
            "Test size: %d\n"
@@ -350,10 +408,10 @@ void test(int test_size, int number_of_tests, solver solver, char *solverName)
         struct timeval stop, start;
         gettimeofday(&start, NULL);
         // Save first iteration results
-        n = solver(result, defaultClues, defaultCluesSize, 0);
+        n = solver(dict, result, defaultClues, defaultCluesSize, 0);
         for (int j = 1; j < test_size; j++)
         {
-            n = solver(result, defaultClues, defaultCluesSize, 0);
+            n = solver(dict, result, defaultClues, defaultCluesSize, 0);
         }
         gettimeofday(&stop, NULL);
         testTimes[i] = ((stop.tv_sec - start.tv_sec) * 1000) + ((stop.tv_usec - start.tv_usec) / 1000); // en milisegundos
@@ -370,10 +428,11 @@ void test(int test_size, int number_of_tests, solver solver, char *solverName)
     avgIterTime = avgIterTime / number_of_tests;
 
     printf("AVERAGE: %.4lf ms | %.4lf ms\n", avgTestTime, avgIterTime);
-    printResults(defaultClues, defaultCluesSize, result, n, 1000);
+    printResults(dict, defaultClues, defaultCluesSize, result, n, 1000);
+    free(result);
 }
 
-void printResults(clue *clues, int clueSize, int *result, int n, int maxLines)
+void printResults(const dictionary *dict, clue *clues, int clueSize, int *result, int n, int maxLines)
 {
     printf("\nShowing results for list of clues: \n");
     for (int i = 0; i < clueSize; i++)
@@ -386,7 +445,7 @@ void printResults(clue *clues, int clueSize, int *result, int n, int maxLines)
     printf("\nFound %d matching words: \n", n);
     for (int i = 0; i < printSize; i++)
     {
-        printf("  %d) %s\n", i, dict[result[i]]);
+        printf("  %d) %.*s\n", i, dict->wordSize, &dict->words[result[i] * dict->wordSize]);
     }
     if (maxLines < n)
     {
@@ -411,4 +470,3 @@ void printClue(clue c)
         break;
     }
 }
-void test(int test_size, int number_of_tests, solver solver, char *solverName);
@@ -0,0 +1,108 @@
+package dev.derivada;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Java (JIT) against native (C through the foreign function API) solver backends, run from the repository root after
+ * building the library (make -C cimpl):
+ * <p>
+ * java --enable-native-access=ALL-UNNAMED -jar jmh/target/benchmarks.jar BackendBenchmark
+ * <p>
+ * The native backends are only in the jar when it is built on JDK 21 or newer (see native/pom.xml), and on 21 the
+ * command also needs --enable-preview. Every operation solves batchSize queries, one call each (oneByOne) or a
+ * single call for all of them (batch), so small batches show what the downcall and the copies cost. The queries are 1
+ * to 4 random clues of any type.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BackendBenchmark {
+
+    @Param({"dict.txt", "dict_full.txt"})
+    public String dictionary;
+
+    @Param({"java", "java-multithread", "native", "native-multithread"})
+    public String backend;
+
+    @Param({"1", "16", "256"})
+    public int batchSize;
+
+    SolverBackend solver;
+    int[][] clueTypes;
+    char[][] clueLetters;
+    int[] result;
+    int[] batchResult;
+    int[] counts;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        if (!WordleTool.setup(dictionary))
+            throw new IllegalStateException("Couldn't load " + dictionary + ", run the benchmarks from the repository root");
+        WordTable words = WordleTool.getWordTable();
+        Path library = Path.of("cimpl/libwordle.so");
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        switch (backend) {
+            case "java":
+                solver = JavaBackend.optimized();
+                break;
+            case "java-multithread":
+                solver = JavaBackend.multithread(WordleTool.newParallelSolver(ForkJoinPool.commonPool()));
+                break;
+            case "native":
+                solver = SolverBackend.ofNative(library, words, 1);
+                break;
+            case "native-multithread":
+                solver = SolverBackend.ofNative(library, words, threads);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown backend " + backend);
+        }
+
+        List<Clue> clues = Arrays.asList(WordleTool.getSortedClues());
+        Random random = new Random(42);
+        clueTypes = new int[batchSize][];
+        clueLetters = new char[batchSize][];
+        for (int q = 0; q < batchSize; q++) {
+            List<Clue> query = new ArrayList<>();
+            int count = 1 + random.nextInt(4);
+            for (int i = 0; i < count; i++)
+                query.add(clues.get(random.nextInt(clues.size())));
+            clueTypes[q] = Clue.types(query);
+            clueLetters[q] = Clue.letters(query);
+        }
+        result = new int[words.size()];
+        batchResult = new int[batchSize * words.size()];
+        counts = new int[batchSize];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (solver != null)
+            solver.close();
+    }
+
+    @Benchmark
+    public int oneByOne() {
+        int found = 0;
+        for (int q = 0; q < batchSize; q++)
+            found += solver.solve(clueTypes[q], clueLetters[q], 0, result);
+        return found;
+    }
+
+    @Benchmark
+    public int[] batch() {
+        solver.solveBatch(clueTypes, clueLetters, 0, batchResult, counts);
+        return counts;
+    }
+}
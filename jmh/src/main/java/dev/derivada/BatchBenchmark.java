@@ -0,0 +1,89 @@
+package dev.derivada;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batch solving against the same queries solved one by one, run from the repository root:
+ * <p>
+ * java -jar jmh/target/benchmarks.jar BatchBenchmark
+ * <p>
+ * The queries are random games: 1 to 4 rounds of 2 clues each, every round keeps the clues of the previous ones.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchBenchmark {
+
+    @Param({"dict.txt", "dict_full.txt"})
+    public String dictionary;
+
+    @Param({"100", "10000"})
+    public int batchSize;
+
+    List<List<Clue>> queries;
+    // Same queries for the primes solver, clues in the order they should be applied
+    int[][] clueTypes;
+    char[][] clueLetters;
+    int[][] clueLettersInt;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        if (!WordleTool.setup(dictionary))
+            throw new IllegalStateException("Couldn't load " + dictionary + ", run the benchmarks from the repository root");
+        Clue[] sortedClues = WordleTool.getSortedClues();
+        Random random = new Random(42);
+        queries = new ArrayList<>(batchSize);
+        while (queries.size() < batchSize) {
+            List<Clue> clues = new ArrayList<>();
+            int rounds = 1 + random.nextInt(4);
+            for (int r = 0; r < rounds && queries.size() < batchSize; r++) {
+                clues.add(sortedClues[random.nextInt(sortedClues.length)]);
+                clues.add(sortedClues[random.nextInt(sortedClues.length)]);
+                queries.add(new ArrayList<>(clues));
+            }
+        }
+
+        clueTypes = new int[batchSize][];
+        clueLetters = new char[batchSize][];
+        clueLettersInt = new int[batchSize][];
+        for (int q = 0; q < batchSize; q++) {
+            List<Clue> sorted = WordleTool.sortClues(queries.get(q));
+            clueTypes[q] = Clue.types(sorted);
+            clueLetters[q] = Clue.letters(sorted);
+            clueLettersInt[q] = new int[clueLetters[q].length];
+            for (int j = 0; j < clueLetters[q].length; j++)
+                clueLettersInt[q][j] = clueLetters[q][j] - 'a';
+        }
+    }
+
+    @Benchmark
+    public int[][] batch() {
+        return WordleTool.getBatchSolver().solve(queries);
+    }
+
+    @Benchmark
+    public int separateMultithread() {
+        int[] result = new int[WordleTool.getWordTable().size()];
+        int found = 0;
+        for (int q = 0; q < batchSize; q++)
+            found += WordleTool.solveMultithread(clueTypes[q], clueLetters[q], clueLettersInt[q], result);
+        return found;
+    }
+
+    @Benchmark
+    public int separateBitmask() {
+        int[] result = new int[WordleTool.getWordTable().size()];
+        int found = 0;
+        for (int q = 0; q < batchSize; q++)
+            found += WordleTool.getBitmaskSolver().solve(Clue.types(queries.get(q)), Clue.letters(queries.get(q)), result);
+        return found;
+    }
+}
@@ -0,0 +1,168 @@
+package dev.derivada;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of every solver path, run from the repository root so the dictionaries are found:
+ * <p>
+ * java -jar jmh/target/benchmarks.jar SolverBenchmark -prof gc
+ * <p>
+ * The clue sets are taken from the dictionary itself: "high" selectivity clues match 5-35% of the words each (present
+ * letters and positions), "low" selectivity ones 65-98% (mostly missing letters). No letter is used twice in a set.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SolverBenchmark {
+
+    @Param({"dict.txt", "dict_full.txt"})
+    public String dictionary;
+
+    @Param({"1", "2", "4", "8"})
+    public int clueCount;
+
+    @Param({"high", "low"})
+    public String selectivity;
+
+    List<Clue> clues;
+    int[] clueTypes;
+    char[] clueLetters;
+    // Same clues in the order they should be applied (see ClueStats), for the primes solvers
+    int[] sortedClueTypes;
+    char[] sortedClueLetters;
+    int[] sortedClueLettersInt;
+    int[] result;
+    WordTable words;
+    long[] wordValues;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        if (!WordleTool.setup(dictionary))
+            throw new IllegalStateException("Couldn't load " + dictionary + ", run the benchmarks from the repository root");
+        String[] words = WordleTool.getWords();
+        double min = selectivity.equals("high") ? 0.05 : 0.65;
+        double max = selectivity.equals("high") ? 0.35 : 0.98;
+
+        clues = new ArrayList<>();
+        boolean[] usedLetters = new boolean[26];
+        for (Clue c : WordleTool.getSortedClues()) {
+            double matches = (double) c.applyToList(words).length / words.length;
+            if (clues.size() < clueCount && matches >= min && matches <= max && !usedLetters[c.getLetter() - 'a']) {
+                clues.add(c);
+                usedLetters[c.getLetter() - 'a'] = true;
+            }
+        }
+        if (clues.size() < clueCount)
+            throw new IllegalStateException("Only " + clues.size() + " clues with " + selectivity + " selectivity");
+
+        clueTypes = Clue.types(clues);
+        clueLetters = Clue.letters(clues);
+        List<Clue> sorted = WordleTool.sortClues(clues);
+        sortedClueTypes = Clue.types(sorted);
+        sortedClueLetters = Clue.letters(sorted);
+        sortedClueLettersInt = new int[sortedClueLetters.length];
+        for (int i = 0; i < sortedClueLetters.length; i++)
+            sortedClueLettersInt[i] = sortedClueLetters[i] - 'a';
+        result = new int[words.length];
+        this.words = WordleTool.getWordTable();
+        wordValues = WordleTool.getWordValues();
+    }
+
+    @Benchmark
+    public String[] solveTrivial() {
+        return WordleTool.solveTrivial(clues, 0);
+    }
+
+    @Benchmark
+    public String[] solveOptimized() {
+        return WordleTool.solveOptimized(clueTypes, clueLetters, 0);
+    }
+
+    /**
+     * Same loop without the String results, the clues ordered beforehand and word ids into a reused buffer
+     */
+    @Benchmark
+    public int solveOptimizedIndexes() {
+        return WordleTool.solveOptimized(sortedClueTypes, sortedClueLetters, sortedClueLettersInt, result);
+    }
+
+    @Benchmark
+    public String[] applyToList() {
+        return clues.get(0).applyToList(WordleTool.getWords());
+    }
+
+    @Benchmark
+    public String[] bitmask() {
+        return WordleTool.getBitmaskSolver().solve(clueTypes, clueLetters, 0);
+    }
+
+    @Benchmark
+    public int bitmaskIndexes() {
+        return WordleTool.getBitmaskSolver().solve(clueTypes, clueLetters, result);
+    }
+
+    @Benchmark
+    public String[] clueIndex() {
+        return WordleTool.getClueIndex().solve(clues, 0);
+    }
+
+    /**
+     * The primes loop of the leaves of solveMultithread, on the whole dictionary, interpreting the clues...
+     */
+    @Benchmark
+    public int primesInterpreted() {
+        return ClueCompiler.interpret(sortedClueTypes, sortedClueLetters, sortedClueLettersInt)
+                .match(words, wordValues, 0, words.size(), result);
+    }
+
+    /**
+     * ...and compiled (cached after the first call)
+     */
+    @Benchmark
+    public int primesCompiled() {
+        return ClueCompiler.compile(sortedClueTypes, sortedClueLetters, sortedClueLettersInt)
+                .match(words, wordValues, 0, words.size(), result);
+    }
+
+    @Benchmark
+    public String[] solveMultithread(Pool pool) {
+        return pool.solver.solve(sortedClueTypes, sortedClueLetters, sortedClueLettersInt, 0);
+    }
+
+    @Benchmark
+    public int solveMultithreadIndexes(Pool pool) {
+        return pool.solver.solve(sortedClueTypes, sortedClueLetters, sortedClueLettersInt, result);
+    }
+
+    /**
+     * Fork-join pool for solveMultithread, only that benchmark is repeated for every thread count
+     */
+    @State(Scope.Benchmark)
+    public static class Pool {
+
+        @Param({"1", "2", "4", "8"})
+        public int threads;
+
+        ForkJoinPool pool;
+        ParallelSolver solver;
+
+        @Setup(Level.Trial)
+        public void setup(SolverBenchmark benchmark) {
+            pool = new ForkJoinPool(threads);
+            solver = WordleTool.newParallelSolver(pool);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package dev.derivada;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.invoke.MethodHandle;
+import java.nio.file.Path;
+
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+
+/**
+ * The C solver (cimpl/main.c built as libwordle.so, see cimpl/Makefile) as a backend, called through the foreign
+ * function API (java.lang.foreign)
+ * <p>
+ * 1. The dictionary is copied once to an off-heap segment and handed to wordleInit(), which keeps its own copy with the
+ * word values and clue order, one per backend
+ * <p>
+ * 2. Every query writes its clues to off-heap buffers of a confined arena of its own, makes one downcall (wordleSolve(),
+ * or wordleSolveMultithread() with more than one thread), copies the dictionary indexes back to the caller's buffer and
+ * closes the arena. Nothing is kept per thread, so threads coming and going don't leave buffers behind
+ * <p>
+ * 3. solveBatch() copies all the clue lists at once and makes a single downcall for all of them (solved one after the
+ * other on the calling thread), so the cost of the call itself is paid once per batch
+ * <p>
+ * The API is final from JDK 22 on and a preview in 21, so this module is built for 22, or for 21 with --enable-preview
+ * (see native/pom.xml), while the rest of the project stays on 17. Create it through SolverBackend.ofNative() from
+ * code that has to build without it. Newer JDKs warn about native access unless run with
+ * --enable-native-access=ALL-UNNAMED.
+ */
+public final class NativeBackend implements SolverBackend {
+    private final int size;
+    private final int threads;
+    // Holds the library and the dictionary segment
+    private final Arena arena;
+    // dictionary * returned by wordleInit()
+    private final MemorySegment dictionary;
+    private final MethodHandle solve, solveBatch, free;
+
+    /**
+     * @param library: path of libwordle.so
+     * @param threads: 1 to solve on the calling thread, more to split every query in that many native threads
+     * @throws IllegalArgumentException if the library can't be loaded or misses an entry point, or the words are
+     *                                  longer than WordleTool.MAX_PRIMES_WORD_SIZE
+     */
+    public NativeBackend(Path library, WordTable words, int threads) {
+        if (threads <= 0)
+            throw new IllegalArgumentException("Threads must be positive, got " + threads);
+        if (words.getWordSize() > WordleTool.MAX_PRIMES_WORD_SIZE)
+            throw new IllegalArgumentException("The C solver only takes words up to " + WordleTool.MAX_PRIMES_WORD_SIZE
+                    + " letters, got " + words.getWordSize());
+        this.size = words.size();
+        this.threads = threads;
+        arena = Arena.ofShared();
+        try {
+            SymbolLookup symbols = SymbolLookup.libraryLookup(library.toAbsolutePath(), arena);
+            Linker linker = Linker.nativeLinker();
+            MethodHandle init = downcall(linker, symbols, "wordleInit",
+                    FunctionDescriptor.of(ADDRESS, ADDRESS, JAVA_INT, JAVA_INT, JAVA_INT));
+            solve = downcall(linker, symbols, threads == 1 ? "wordleSolve" : "wordleSolveMultithread",
+                    FunctionDescriptor.of(JAVA_INT, ADDRESS, ADDRESS, ADDRESS, ADDRESS, JAVA_INT, JAVA_INT));
+            solveBatch = downcall(linker, symbols, "wordleSolveBatch", FunctionDescriptor.ofVoid(ADDRESS, ADDRESS,
+                    ADDRESS, ADDRESS, ADDRESS, ADDRESS, JAVA_INT, JAVA_INT, JAVA_INT));
+            free = downcall(linker, symbols, "wordleFree", FunctionDescriptor.ofVoid(ADDRESS));
+
+            byte[] letters = words.getLetters();
+            MemorySegment segment = allocate(arena, letters.length);
+            MemorySegment.copy(letters, 0, segment, JAVA_BYTE, 0, letters.length);
+            dictionary = (MemorySegment) init.invokeExact(segment, size, words.getWordSize(), threads);
+        } catch (Throwable err) {
+            arena.close();
+            throw rethrow(err);
+        }
+    }
+
+    private static MethodHandle downcall(Linker linker, SymbolLookup symbols, String name,
+                                         FunctionDescriptor descriptor) {
+        MemorySegment symbol = symbols.find(name).orElseThrow(
+                () -> new IllegalArgumentException("The native library doesn't have " + name + "(), rebuild it"));
+        return linker.downcallHandle(symbol, descriptor);
+    }
+
+    private static MemorySegment allocate(Arena arena, long bytes) {
+        // Zero bytes is fine for the API, but then there is no address to hand to C
+        return arena.allocate(Math.max(bytes, 1L), Integer.BYTES);
+    }
+
+    /**
+     * The downcalls only throw what the C side can't, so anything checked is a bug of the binding
+     */
+    private static RuntimeException rethrow(Throwable err) {
+        if (err instanceof RuntimeException)
+            return (RuntimeException) err;
+        if (err instanceof Error)
+            throw (Error) err;
+        return new IllegalStateException(err);
+    }
+
+    @Override
+    public String getName() {
+        return threads == 1 ? "native" : "native-multithread";
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int solve(int[] clueTypes, char[] clueLetters, int maxLength, int[] result) {
+        assert clueTypes.length == clueLetters.length;
+        long start = Metrics.start();
+        int clues = clueTypes.length;
+        try (Arena query = Arena.ofConfined()) {
+            MemorySegment resultSegment = allocate(query, (long) getStride(maxLength) * Integer.BYTES);
+            MemorySegment typeSegment = allocate(query, (long) clues * Integer.BYTES);
+            MemorySegment letterSegment = allocate(query, clues);
+            MemorySegment.copy(clueTypes, 0, typeSegment, JAVA_INT, 0, clues);
+            for (int i = 0; i < clues; i++)
+                letterSegment.set(JAVA_BYTE, i, (byte) clueLetters[i]);
+            int n = (int) solve.invokeExact(dictionary, resultSegment, typeSegment, letterSegment, clues, maxLength);
+            MemorySegment.copy(resultSegment, JAVA_INT, 0, result, 0, n);
+            Metrics.query(Metrics.NATIVE, start, clues, n);
+            return n;
+        } catch (Throwable err) {
+            throw rethrow(err);
+        }
+    }
+
+    @Override
+    public void solveBatch(int[][] clueTypes, char[][] clueLetters, int maxLength, int[] result, int[] counts) {
+        assert clueTypes.length == clueLetters.length;
+        int queries = clueTypes.length;
+        int stride = getStride(maxLength);
+        if (result.length < (long) queries * stride)
+            throw new IllegalArgumentException("Result buffer too small for " + queries + " queries");
+        int total = 0;
+        for (int[] types : clueTypes)
+            total += types.length;
+
+        try (Arena batch = Arena.ofConfined()) {
+            MemorySegment resultSegment = allocate(batch, (long) queries * stride * Integer.BYTES);
+            MemorySegment countSegment = allocate(batch, (long) queries * Integer.BYTES);
+            MemorySegment typeSegment = allocate(batch, (long) total * Integer.BYTES);
+            MemorySegment letterSegment = allocate(batch, total);
+            MemorySegment sizeSegment = allocate(batch, (long) queries * Integer.BYTES);
+            // All the clues back to back, and how many each query has
+            for (int q = 0, first = 0; q < queries; first += clueTypes[q++].length) {
+                int clues = clueTypes[q].length;
+                sizeSegment.setAtIndex(JAVA_INT, q, clues);
+                MemorySegment.copy(clueTypes[q], 0, typeSegment, JAVA_INT, (long) first * Integer.BYTES, clues);
+                for (int i = 0; i < clues; i++)
+                    letterSegment.set(JAVA_BYTE, first + i, (byte) clueLetters[q][i]);
+            }
+            solveBatch.invokeExact(dictionary, resultSegment, countSegment, typeSegment, letterSegment, sizeSegment,
+                    queries, maxLength, stride);
+            MemorySegment.copy(countSegment, JAVA_INT, 0, counts, 0, queries);
+            for (int q = 0; q < queries; q++)
+                MemorySegment.copy(resultSegment, JAVA_INT, (long) q * stride * Integer.BYTES, result, q * stride,
+                        counts[q]);
+        } catch (Throwable err) {
+            throw rethrow(err);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            free.invokeExact(dictionary);
+        } catch (Throwable err) {
+            throw rethrow(err);
+        } finally {
+            arena.close();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package dev.derivada;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Solves many clue lists in one pass over the dictionary
+ * <p>
+ * Works on the clue index bitsets (see ClueIndex), 64 words per block:
+ * <p>
+ * 1. The queries are deduplicated (same ClueSet, solved once) and so are their clues: every distinct clue gets an id
+ * and each query becomes a list of ids
+ * <p>
+ * 2. The blocks are split in tiles of TILE_BLOCKS, and the tiles across the fork-join pool. In a tile every query ANDs
+ * the blocks of its clues, reading them again from the index, but a tile of the distinct clues is small enough to stay
+ * in cache while all the queries go through it, instead of walking the whole dictionary once per query
+ * <p>
+ * 3. Each query gets its own result bitset (tiles write disjoint parts of it), converted to dictionary indexes at the end
+ */
+public class BatchSolver {
+    // 32 blocks = 2048 words, 256 bytes per distinct clue
+    static final int TILE_BLOCKS = 32;
+
+    private final ClueIndex index;
+    private final ForkJoinPool pool;
+    private final int blocks;
+    // Valid bits of the last block
+    private final long lastBlockMask;
+
+    public BatchSolver(ClueIndex index, ForkJoinPool pool) {
+        this.index = index;
+        this.pool = pool;
+        this.blocks = index.getBlocks();
+        this.lastBlockMask = index.size() % Long.SIZE == 0 ? -1L : (1L << index.size()) - 1;
+    }
+
+    /**
+     * @param queries: clue lists, see WordleTool class docs
+     * @return The dictionary indexes of the valid words of every query, in dictionary order. Repeated queries share
+     * the same array, must not be modified
+     */
+    public int[][] solve(List<List<Clue>> queries) {
+        long start = Metrics.start();
+        // Part 1. Distinct queries and distinct clues
+        Map<ClueSet, Integer> distinctQueries = new HashMap<>();
+        int[] queryOf = new int[queries.size()];
+        int[][] queryClues = new int[queries.size()][];
+        int[] slotToId = new int[index.getBitsets().length];
+        Arrays.fill(slotToId, -1);
+        int[] idToSlot = new int[slotToId.length];
+        int clueCount = 0;
+        int queryCount = 0;
+        int wordSize = index.getWordSize();
+        for (int q = 0; q < queryOf.length; q++) {
+            List<Clue> clues = queries.get(q);
+            int[] ids = new int[clues.size()];
+            boolean impossible = false;
+            for (int j = 0; j < ids.length; j++) {
+                int slot = index.slot(clues.get(j));
+                if (slot < 0) {
+                    impossible = true;
+                    break;
+                }
+                if (slotToId[slot] < 0) {
+                    slotToId[slot] = clueCount;
+                    idToSlot[clueCount++] = slot;
+                }
+                ids[j] = slotToId[slot];
+            }
+            // Nothing matches, no clues to check but no word is kept either (see Tile)
+            if (impossible) {
+                queryOf[q] = queryCount;
+                queryClues[queryCount++] = null;
+                continue;
+            }
+            Integer same = distinctQueries.putIfAbsent(ClueSet.of(clues, wordSize), queryCount);
+            if (same != null) {
+                queryOf[q] = same;
+            } else {
+                queryOf[q] = queryCount;
+                queryClues[queryCount++] = ids;
+            }
+        }
+        long[][] clueBitsets = new long[clueCount][];
+        for (int c = 0; c < clueCount; c++)
+            clueBitsets[c] = index.getBitsets()[idToSlot[c]];
+
+        // Part 2. One pass over the tiles
+        long[][] results = new long[queryCount][blocks];
+        int tiles = (blocks + TILE_BLOCKS - 1) / TILE_BLOCKS;
+        if (tiles > 0)
+            pool.invoke(new Tile(clueBitsets, Arrays.copyOf(queryClues, queryCount), results, 0, tiles));
+
+        // Part 3. Dictionary indexes
+        int[][] distinct = new int[queryCount][];
+        int[] buffer = new int[index.size()];
+        for (int q = 0; q < queryCount; q++) {
+            int n = ClueIndex.toIndexes(results[q], buffer);
+            distinct[q] = Arrays.copyOf(buffer, n);
+        }
+        int[][] solutions = new int[queries.size()][];
+        for (int q = 0; q < solutions.length; q++)
+            solutions[q] = distinct[queryOf[q]];
+        // One latency for the whole batch, with its number of distinct clues
+        Metrics.query(Metrics.BATCH, start, clueCount, queries.size());
+        return solutions;
+    }
+
+    private final class Tile extends RecursiveAction {
+        private final long[][] clueBitsets;
+        // Clue ids of every distinct query, null if nothing can match it
+        private final int[][] queryClues;
+        private final long[][] results;
+        private final int startTile, endTile;
+
+        Tile(long[][] clueBitsets, int[][] queryClues, long[][] results, int startTile, int endTile) {
+            this.clueBitsets = clueBitsets;
+            this.queryClues = queryClues;
+            this.results = results;
+            this.startTile = startTile;
+            this.endTile = endTile;
+        }
+
+        @Override
+        protected void compute() {
+            if (endTile - startTile == 1) {
+                computeTile(startTile);
+            } else {
+                int half = startTile + (endTile - startTile) / 2;
+                invokeAll(new Tile(clueBitsets, queryClues, results, startTile, half),
+                        new Tile(clueBitsets, queryClues, results, half, endTile));
+            }
+        }
+
+        private void computeTile(int tile) {
+            int start = tile * TILE_BLOCKS;
+            int end = Math.min(start + TILE_BLOCKS, blocks);
+            for (int q = 0; q < queryClues.length; q++) {
+                int[] ids = queryClues[q];
+                if (ids == null)
+                    continue;
+                long[] result = results[q];
+                for (int b = start; b < end; b++) {
+                    long acc = b == blocks - 1 ? lastBlockMask : -1L;
+                    for (int id : ids)
+                        acc &= clueBitsets[id][b];
+                    result[b] = acc;
+                }
+            }
+        }
+    }
+}
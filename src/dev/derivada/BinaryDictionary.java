@@ -0,0 +1,175 @@
+package dev.derivada;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Compiled dictionary, so setup() doesn't have to read and encode the text dictionary on every run
+ * <p>
+ * Holds the words and everything setup() computes from them: the primes values, the bitmask encodings, how many
+ * words satisfy each clue, how many contain each pair of letters (see ClueStats) and the clue index bitsets.
+ * File format (big endian):
+ * <p>
+ * magic "WDIC" | int version | int word size | int number of words | long text dictionary size |
+ * long text dictionary last modified time | words (word size bytes each) | long wordValues[] | int letterMasks[] |
+ * long positions[] | int clueCounts[] | int pairCounts[26 * 26] | long clueBitsets[][], clues in ClueIndex slot order
+ * (letter * (word size + 2) + type + 1), (number of words + 63) / 64 longs per bitset
+ */
+public class BinaryDictionary {
+    static final int MAGIC = 0x57444943; // "WDIC"
+    static final int VERSION = 3;
+    static final int HEADER_SIZE = 4 * Integer.BYTES + 2 * Long.BYTES;
+    private static final int ALPHABET_SIZE = 26;
+
+    private final int wordSize;
+    private final WordTable words;
+    private final long[] wordValues;
+    private final int[] letterMasks;
+    private final long[] positions;
+    private final int[] clueCounts;
+    private final int[] pairCounts;
+    private final long[][] clueBitsets;
+
+    public BinaryDictionary(int wordSize, WordTable words, long[] wordValues, int[] letterMasks, long[] positions,
+                            int[] clueCounts, int[] pairCounts, long[][] clueBitsets) {
+        assert words.size() == wordValues.length && words.size() == letterMasks.length && words.size() == positions.length;
+        assert clueCounts.length == ALPHABET_SIZE * (wordSize + 2) && clueBitsets.length == clueCounts.length;
+        assert pairCounts.length == ALPHABET_SIZE * ALPHABET_SIZE;
+        this.wordSize = wordSize;
+        this.words = words;
+        this.wordValues = wordValues;
+        this.letterMasks = letterMasks;
+        this.positions = positions;
+        this.clueCounts = clueCounts;
+        this.pairCounts = pairCounts;
+        this.clueBitsets = clueBitsets;
+    }
+
+    /**
+     * Memory maps a dictionary written by write()
+     *
+     * @param source: the text dictionary it was compiled from
+     * @return The dictionary, or null if the file is from another version, word size or an older text dictionary
+     */
+    public static BinaryDictionary load(Path path, Path source, int wordSize) throws IOException {
+        BasicFileAttributes sourceAttributes = Files.readAttributes(source, BasicFileAttributes.class);
+        ByteBuffer map = MappedFile.map(path, MAGIC, VERSION, HEADER_SIZE);
+        if (map == null || map.getInt() != wordSize)
+            return null;
+        int count = map.getInt();
+        if (map.getLong() != sourceAttributes.size() || map.getLong() != sourceAttributes.lastModifiedTime().toMillis())
+            return null;
+        int clues = ALPHABET_SIZE * (wordSize + 2);
+        if (map.capacity() != fileSize(count, wordSize, clues))
+            return null;
+
+        // Same layout as WordTable, no String per word
+        byte[] letters = new byte[count * wordSize];
+        map.get(letters);
+        WordTable words = new WordTable(wordSize, letters);
+        long[] wordValues = new long[count];
+        int[] letterMasks = new int[count];
+        long[] positions = new long[count];
+        int[] clueCounts = new int[clues];
+        int[] pairCounts = new int[ALPHABET_SIZE * ALPHABET_SIZE];
+        map.asLongBuffer().get(wordValues);
+        map.position(map.position() + count * Long.BYTES);
+        map.asIntBuffer().get(letterMasks);
+        map.position(map.position() + count * Integer.BYTES);
+        map.asLongBuffer().get(positions);
+        map.position(map.position() + count * Long.BYTES);
+        map.asIntBuffer().get(clueCounts);
+        map.position(map.position() + clues * Integer.BYTES);
+        map.asIntBuffer().get(pairCounts);
+        map.position(map.position() + pairCounts.length * Integer.BYTES);
+        long[][] clueBitsets = new long[clues][blocks(count)];
+        for (long[] bitset : clueBitsets) {
+            map.asLongBuffer().get(bitset);
+            map.position(map.position() + bitset.length * Long.BYTES);
+        }
+        return new BinaryDictionary(wordSize, words, wordValues, letterMasks, positions, clueCounts, pairCounts, clueBitsets);
+    }
+
+    /**
+     * Writes the dictionary atomically, see MappedFile.write()
+     *
+     * @param source: the text dictionary it was compiled from
+     */
+    public void write(Path path, Path source) throws IOException {
+        BasicFileAttributes sourceAttributes = Files.readAttributes(source, BasicFileAttributes.class);
+        ByteBuffer buffer = MappedFile.header((int) fileSize(words.size(), wordSize, clueCounts.length), MAGIC, VERSION);
+        buffer.putInt(wordSize).putInt(words.size());
+        buffer.putLong(sourceAttributes.size()).putLong(sourceAttributes.lastModifiedTime().toMillis());
+        buffer.put(words.getLetters());
+        for (long value : wordValues)
+            buffer.putLong(value);
+        for (int mask : letterMasks)
+            buffer.putInt(mask);
+        for (long position : positions)
+            buffer.putLong(position);
+        for (int count : clueCounts)
+            buffer.putInt(count);
+        for (int count : pairCounts)
+            buffer.putInt(count);
+        for (long[] bitset : clueBitsets) {
+            for (long block : bitset)
+                buffer.putLong(block);
+        }
+        buffer.flip();
+        MappedFile.write(path, buffer);
+    }
+
+    private static long fileSize(int count, int wordSize, int clues) {
+        return HEADER_SIZE + (long) count * (wordSize + Integer.BYTES + 2 * Long.BYTES)
+                + ALPHABET_SIZE * ALPHABET_SIZE * Integer.BYTES
+                + (long) clues * (Integer.BYTES + (long) blocks(count) * Long.BYTES);
+    }
+
+    private static int blocks(int count) {
+        return (count + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    public int getWordSize() {
+        return wordSize;
+    }
+
+    public WordTable getWords() {
+        return words;
+    }
+
+    public long[] getWordValues() {
+        return wordValues;
+    }
+
+    public int[] getLetterMasks() {
+        return letterMasks;
+    }
+
+    public long[] getPositions() {
+        return positions;
+    }
+
+    /**
+     * @return How many words satisfy each clue, in ClueIndex slot order
+     */
+    public int[] getClueCounts() {
+        return clueCounts;
+    }
+
+    /**
+     * @return How many words contain both letters, indexed by a * 26 + b
+     */
+    public int[] getPairCounts() {
+        return pairCounts;
+    }
+
+    /**
+     * @return The clue index bitsets, in ClueIndex slot order
+     */
+    public long[][] getClueBitsets() {
+        return clueBitsets;
+    }
+}
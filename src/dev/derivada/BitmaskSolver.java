@@ -0,0 +1,192 @@
+package dev.derivada;
+
+/**
+ * Bitmask solver, replacement for the primes encoding
+ * <p>
+ * Every word is stored as two numbers:
+ * <p>
+ * 1. letterMask: bit n is set if the n-th letter of the alphabet is present in the word. Ex: abbey -> bits 0, 1, 4 and 24
+ * <p>
+ * 2. positions: the letter index of every position packed in 5 bits, position 1 in the lowest bits
+ * <p>
+ * A list of clues is reduced to four numbers (required letters, forbidden letters, positional mask and positional value)
+ * so checking a word is just a couple of ANDs and compares, with no % and no branches on the clue type.
+ */
+public class BitmaskSolver {
+    static final int BITS_PER_POSITION = 5;
+    static final int MAX_WORD_SIZE = Long.SIZE / BITS_PER_POSITION;
+    private static final long POSITION_BITS = (1L << BITS_PER_POSITION) - 1;
+
+    private final WordTable words;
+    private final int[] letterMasks;
+    private final long[] positions;
+    private final int wordSize;
+
+    public BitmaskSolver(WordTable words) {
+        this(words, new int[words.size()], new long[words.size()]);
+        for (int i = 0; i < words.size(); i++) {
+            int mask = 0;
+            long packed = 0;
+            for (int p = 0; p < wordSize; p++) {
+                int letter = words.charAt(i, p) - 'a';
+                mask |= 1 << letter;
+                packed |= (long) letter << (p * BITS_PER_POSITION);
+            }
+            letterMasks[i] = mask;
+            positions[i] = packed;
+        }
+    }
+
+    /**
+     * Uses encodings computed beforehand (see BinaryDictionary), parallel to words
+     */
+    public BitmaskSolver(WordTable words, int[] letterMasks, long[] positions) {
+        if (words.getWordSize() > MAX_WORD_SIZE)
+            throw new IllegalArgumentException("Word size " + words.getWordSize() + " doesn't fit the bitmask encoding (max " + MAX_WORD_SIZE + ")");
+        assert words.size() == letterMasks.length && words.size() == positions.length;
+        this.words = words;
+        this.wordSize = words.getWordSize();
+        this.letterMasks = letterMasks;
+        this.positions = positions;
+    }
+
+    public static int letterMask(String word) {
+        int mask = 0;
+        for (int i = 0; i < word.length(); i++)
+            mask |= 1 << (word.charAt(i) - 'a');
+        return mask;
+    }
+
+    public static long packPositions(String word) {
+        long packed = 0;
+        for (int i = 0; i < word.length(); i++)
+            packed |= (long) (word.charAt(i) - 'a') << (i * BITS_PER_POSITION);
+        return packed;
+    }
+
+    /**
+     * Applies the clues to the whole dictionary
+     *
+     * @param clueTypes:   see WordleTool class docs
+     * @param clueLetters: letters of the clues, parallel to clueTypes
+     * @param result:      output buffer for the dictionary indexes of the valid words, at least as big as the dictionary
+     * @return The number of valid words written to result
+     */
+    public int solve(int[] clueTypes, char[] clueLetters, int[] result) {
+        long start = Metrics.start();
+        Mask mask = new Mask(clueTypes, clueLetters);
+        if (mask.impossible)
+            return 0;
+        int letterBits = mask.required | mask.forbidden;
+        int required = mask.required;
+        long positionMask = mask.positionMask, positionValue = mask.positionValue;
+        int n = 0;
+        for (int i = 0; i < words.size(); i++) {
+            // miss == 0 iff all required letters are present, no forbidden letter is and all positions match
+            long miss = ((letterMasks[i] & letterBits) ^ required) | ((positions[i] & positionMask) ^ positionValue);
+            // Always write, only advance on a match, so the loop has no data-dependent branch
+            result[n] = i;
+            n += miss == 0 ? 1 : 0;
+        }
+        Metrics.query(Metrics.BITMASK, start, clueTypes.length, n);
+        return n;
+    }
+
+    /**
+     * Same as solve(int[], char[], int[]) but only checks the given candidates instead of the whole dictionary
+     *
+     * @param candidates: dictionary indexes to check
+     * @param count:      number of valid entries in candidates
+     * @param result:     output buffer, at least count long (it can be candidates itself)
+     * @return The number of valid words written to result, in the same order as candidates
+     */
+    public int filter(int[] clueTypes, char[] clueLetters, int[] candidates, int count, int[] result) {
+        Mask mask = new Mask(clueTypes, clueLetters);
+        if (mask.impossible)
+            return 0;
+        int letterBits = mask.required | mask.forbidden;
+        int required = mask.required;
+        long positionMask = mask.positionMask, positionValue = mask.positionValue;
+        int n = 0;
+        for (int k = 0; k < count; k++) {
+            int i = candidates[k];
+            long miss = ((letterMasks[i] & letterBits) ^ required) | ((positions[i] & positionMask) ^ positionValue);
+            result[n] = i;
+            n += miss == 0 ? 1 : 0;
+        }
+        return n;
+    }
+
+    public String[] solve(int[] clueTypes, char[] clueLetters, int maxLength) {
+        if (maxLength <= 0) {
+            maxLength = Integer.MAX_VALUE;
+        }
+        int[] result = new int[words.size()];
+        int n = Math.min(solve(clueTypes, clueLetters, result), maxLength);
+        return words.get(result, n);
+    }
+
+    public int getWordSize() {
+        return wordSize;
+    }
+
+    public int size() {
+        return words.size();
+    }
+
+    public String getWord(int index) {
+        return words.get(index);
+    }
+
+    public WordTable getWords() {
+        return words;
+    }
+
+    int[] getLetterMasks() {
+        return letterMasks;
+    }
+
+    long[] getPositions() {
+        return positions;
+    }
+
+    /**
+     * A list of clues reduced to the bitmask encoding
+     */
+    private final class Mask {
+        int required, forbidden;
+        long positionMask, positionValue;
+        boolean impossible;
+
+        Mask(int[] clueTypes, char[] clueLetters) {
+            assert clueTypes.length == clueLetters.length;
+            for (int j = 0; j < clueTypes.length; j++) {
+                int letter = clueLetters[j] - 'a';
+                switch (clueTypes[j]) {
+                    case -1:
+                        forbidden |= 1 << letter;
+                        break;
+                    case 0:
+                        required |= 1 << letter;
+                        break;
+                    default:
+                        if (clueTypes[j] > wordSize) {
+                            impossible = true;
+                            break;
+                        }
+                        int shift = (clueTypes[j] - 1) * BITS_PER_POSITION;
+                        // Two different letters in the same position, nothing can match
+                        if ((positionMask & (POSITION_BITS << shift)) != 0 && ((positionValue >>> shift) & POSITION_BITS) != letter)
+                            impossible = true;
+                        required |= 1 << letter;
+                        positionMask |= POSITION_BITS << shift;
+                        positionValue |= (long) letter << shift;
+                        break;
+                }
+            }
+            // A letter that is both required and forbidden, nothing can match
+            if ((required & forbidden) != 0)
+                impossible = true;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package dev.derivada;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 public class Clue {
 
@@ -17,14 +19,14 @@ public class Clue {
     }
 
     public boolean applyClue(String word) {
-        int index = word.indexOf(letter);
         switch (this.type) {
             case -1:
-                return index < 0;
+                return word.indexOf(letter) < 0;
             case 0:
-                return index >= 0;
+                return word.indexOf(letter) >= 0;
             default:
-                return index == type;
+                // Positions start at 1
+                return type <= word.length() && word.charAt(type - 1) == letter;
         }
     }
 
@@ -40,6 +42,75 @@ public class Clue {
         }
     }
 
+    /**
+     * @return The types of the clues, to use with the parallel arrays solvers
+     */
+    public static int[] types(List<Clue> clues) {
+        int[] types = new int[clues.size()];
+        for (int i = 0; i < types.length; i++)
+            types[i] = clues.get(i).getType();
+        return types;
+    }
+
+    /**
+     * @return The letters of the clues, to use with the parallel arrays solvers
+     */
+    public static char[] letters(List<Clue> clues) {
+        char[] letters = new char[clues.size()];
+        for (int i = 0; i < letters.length; i++)
+            letters[i] = clues.get(i).getLetter();
+        return letters;
+    }
+
+    /**
+     * @return The clues of the parallel arrays, the inverse of types() and letters()
+     */
+    public static List<Clue> list(int[] types, char[] letters) {
+        assert types.length == letters.length;
+        List<Clue> clues = new ArrayList<>(types.length);
+        for (int i = 0; i < types.length; i++)
+            clues.add(new Clue(types[i], letters[i]));
+        return clues;
+    }
+
+    /**
+     * Inverse of toText()
+     *
+     * @param text: letter followed by the type. Ex: "a-1" letter a not in word, "s0" s in unknown position
+     */
+    public static Clue parse(String text) {
+        if (text.length() < 2 || text.charAt(0) < 'a' || text.charAt(0) > 'z')
+            throw new IllegalArgumentException("Bad clue: " + text);
+        int type;
+        try {
+            type = Integer.parseInt(text.substring(1));
+        } catch (NumberFormatException err) {
+            throw new IllegalArgumentException("Bad clue type: " + text);
+        }
+        if (type < -1)
+            throw new IllegalArgumentException("Bad clue type: " + text);
+        return new Clue(type, text.charAt(0));
+    }
+
+    /**
+     * @param text: clues separated by commas or spaces, see parse()
+     */
+    public static List<Clue> parseList(String text) {
+        List<Clue> clues = new ArrayList<>();
+        for (String clue : text.trim().split("[,\\s]+")) {
+            if (!clue.isEmpty())
+                clues.add(parse(clue));
+        }
+        return clues;
+    }
+
+    /**
+     * @return The short text form of the clue, see parse()
+     */
+    public String toText() {
+        return letter + String.valueOf(type);
+    }
+
     public int getType() {
         return type;
     }
@@ -56,4 +127,9 @@ public class Clue {
         c = (Clue) o;
         return c.getType() == this.getType() && c.getLetter() == this.getLetter();
     }
+
+    @Override
+    public int hashCode() {
+        return 31 * type + letter;
+    }
 }
@@ -0,0 +1,392 @@
+package dev.derivada;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiles a list of clues into a matcher for the primes encoding
+ * <p>
+ * The primes solvers interpret the clues on every word: a switch on the clue type and a lookup of the prime of its
+ * letter. The compiled matcher is a hidden class whose match() method is the same loop with the clues unrolled, the
+ * primes, letters and types are constants in the bytecode, so the JIT sees a straight line of % and compares:
+ * <p>
+ * 1. Type -1: word value % p == 0 -> rejected
+ * <p>
+ * 2. Type 0: word value % p != 0 -> rejected
+ * <p>
+ * 3. Type n: !words.hasLetterAt(i, n - 1, letter) -> rejected, the exact position like BitmaskSolver (no prime needed)
+ * <p>
+ * Matchers don't hold the dictionary and are cached by clue set (same clues in any order or repeated share a matcher),
+ * so a repeated query only pays a map lookup. Defining a class (and letting the JIT compile it) costs more than a few
+ * interpreted runs, so a clue set is only compiled once it has been asked for COMPILE_THRESHOLD times, queries that are
+ * never repeated stay interpreted.
+ */
+public final class ClueCompiler {
+    // The cache is dropped when it gets bigger than this, unused matcher classes are then unloaded
+    static final int MAX_CACHED_MATCHERS = 4096;
+    static final int COMPILE_THRESHOLD = 3;
+    private static final int[] primes = {2, 3, 5, 7, 11, 13, 17, 19, 23, 29, 31, 37, 41, 43, 47, 53, 59, 61, 67, 71, 73,
+            79, 83, 89, 97, 101};
+    private static final Map<String, Entry> cache = new ConcurrentHashMap<>();
+
+    private ClueCompiler() {
+    }
+
+    /**
+     * Primes solver for a fixed list of clues
+     */
+    public interface Matcher {
+        /**
+         * @param words:      the dictionary
+         * @param wordValues: primes values of the words, parallel to words
+         * @param start:      first dictionary index checked
+         * @param end:        last dictionary index checked (exclusive)
+         * @param found:      output buffer for the dictionary indexes of the valid words, written from found[start] on,
+         *                    so it must be at least end long. Ranges of the same dictionary can share it
+         * @return The number of valid words written to found
+         */
+        int match(WordTable words, long[] wordValues, int start, int end, int[] found);
+    }
+
+    /**
+     * @param clueTypes:      see WordleTool class docs
+     * @param clueLetters:    letters of the clues, parallel to clueTypes
+     * @param clueLettersInt: indexes of clueLetters in the primes array
+     * @return The compiled matcher of the clues (checked in the given order when they get compiled), or an
+     * interpreting one if they haven't been asked for COMPILE_THRESHOLD times yet
+     */
+    public static Matcher compile(int[] clueTypes, char[] clueLetters, int[] clueLettersInt) {
+        assert clueTypes.length == clueLetters.length && clueLetters.length == clueLettersInt.length;
+        String key = key(clueTypes, clueLettersInt);
+        Entry entry = cache.get(key);
+        if (entry == null) {
+            if (cache.size() >= MAX_CACHED_MATCHERS)
+                cache.clear();
+            entry = cache.computeIfAbsent(key, k -> new Entry());
+        }
+        synchronized (entry) {
+            if (entry.matcher == null && ++entry.uses >= COMPILE_THRESHOLD)
+                entry.matcher = define(clueTypes, clueLetters, clueLettersInt);
+            return entry.matcher != null ? entry.matcher : interpret(clueTypes, clueLetters, clueLettersInt);
+        }
+    }
+
+    /**
+     * Times a clue set was asked for and its matcher, once compiled
+     */
+    private static final class Entry {
+        int uses;
+        Matcher matcher;
+    }
+
+    /**
+     * @return A matcher interpreting the clues on every word, like the original primes loop
+     */
+    public static Matcher interpret(int[] clueTypes, char[] clueLetters, int[] clueLettersInt) {
+        assert clueTypes.length == clueLetters.length && clueLetters.length == clueLettersInt.length;
+        return (words, wordValues, start, end, found) -> {
+            int n = start;
+            long value;
+            int p;
+            WORD:
+            for (int i = start; i < end; i++) {
+                for (int j = 0; j < clueLetters.length; j++) {
+                    value = wordValues[i];
+                    p = primes[clueLettersInt[j]];
+                    switch (clueTypes[j]) {
+                        case -1:
+                            if ((value % p == 0))
+                                continue WORD;
+                            break;
+                        case 0:
+                            if ((value % p != 0))
+                                continue WORD;
+                            break;
+                        default:
+                            // Positions start at 1
+                            if (!words.hasLetterAt(i, clueTypes[j] - 1, clueLetters[j]))
+                                continue WORD;
+                            break;
+                    }
+                }
+                found[n++] = i;
+            }
+            return n - start;
+        };
+    }
+
+    /**
+     * @return A matcher interpreting the clues like interpret() that also counts, per clue, the words it was checked
+     * on and the ones it kept, and adds them to the metrics after every match() call (see Metrics)
+     */
+    public static Matcher instrument(int[] clueTypes, char[] clueLetters, int[] clueLettersInt) {
+        assert clueTypes.length == clueLetters.length && clueLetters.length == clueLettersInt.length;
+        return (words, wordValues, start, end, found) -> {
+            long[] evaluated = new long[clueTypes.length];
+            long[] passed = new long[clueTypes.length];
+            int n = start;
+            long value;
+            int p;
+            WORD:
+            for (int i = start; i < end; i++) {
+                for (int j = 0; j < clueLetters.length; j++) {
+                    value = wordValues[i];
+                    p = primes[clueLettersInt[j]];
+                    evaluated[j]++;
+                    switch (clueTypes[j]) {
+                        case -1:
+                            if ((value % p == 0))
+                                continue WORD;
+                            break;
+                        case 0:
+                            if ((value % p != 0))
+                                continue WORD;
+                            break;
+                        default:
+                            // Positions start at 1
+                            if (!words.hasLetterAt(i, clueTypes[j] - 1, clueLetters[j]))
+                                continue WORD;
+                            break;
+                    }
+                    passed[j]++;
+                }
+                found[n++] = i;
+            }
+            Metrics.clues(clueTypes, clueLetters, evaluated, passed);
+            return n - start;
+        };
+    }
+
+    static int cacheSize() {
+        return cache.size();
+    }
+
+    /**
+     * @return The clues sorted and without repeats, one char per clue
+     */
+    private static String key(int[] clueTypes, int[] clueLettersInt) {
+        char[] codes = new char[clueTypes.length];
+        for (int j = 0; j < codes.length; j++)
+            codes[j] = (char) ((clueTypes[j] + 1) << 5 | clueLettersInt[j]);
+        Arrays.sort(codes);
+        int n = 0;
+        for (int j = 0; j < codes.length; j++) {
+            if (n == 0 || codes[n - 1] != codes[j])
+                codes[n++] = codes[j];
+        }
+        return new String(codes, 0, n);
+    }
+
+    private static Matcher define(int[] clueTypes, char[] clueLetters, int[] clueLettersInt) {
+        try {
+            byte[] bytes = classFile(clueTypes, clueLetters, clueLettersInt);
+            Class<?> type = MethodHandles.lookup().defineHiddenClass(bytes, true).lookupClass();
+            return (Matcher) type.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | IOException err) {
+            throw new IllegalStateException("Couldn't define the matcher of the clues", err);
+        }
+    }
+
+    // Constant pool of the generated class, see classFile()
+    private static final int CP_THIS_CLASS = 2, CP_OBJECT_CLASS = 4, CP_MATCHER_CLASS = 6, CP_INIT = 7, CP_VOID_DESC = 8,
+            CP_OBJECT_INIT = 10, CP_CODE = 11, CP_MATCH = 12, CP_MATCH_DESC = 13, CP_HAS_LETTER_AT = 19, CP_COUNT = 20;
+
+    // Local variables of match()
+    private static final int L_WORDS = 1, L_VALUES = 2, L_I = 3, L_END = 4, L_FOUND = 5, L_N = 6, L_VALUE = 7,
+            L_START = 9; // value is a long, two slots
+
+    // Opcodes
+    private static final int LCONST_0 = 0x09, BIPUSH = 0x10, ILOAD = 0x15, LLOAD = 0x16, ALOAD = 0x19, LALOAD = 0x2f,
+            ISTORE = 0x36, LSTORE = 0x37, IASTORE = 0x4f, ISUB = 0x64, LREM = 0x71, IINC = 0x84, I2L = 0x85, L2I = 0x88,
+            IFEQ = 0x99, IFNE = 0x9a,
+            IF_ICMPGE = 0xa2, GOTO = 0xa7, IRETURN = 0xac, RETURN = 0xb1, INVOKEVIRTUAL = 0xb6, INVOKESPECIAL = 0xb7;
+
+    /**
+     * Class file (version 50, so no stack map frames are needed) of a final class implementing Matcher. Its match() is:
+     * <pre>
+     * int n = start, first = start;
+     * long value = 0;
+     * for (; start &lt; end; start++) {
+     *     value = wordValues[start];
+     *     (one check per clue, see class docs, rejected words jump to the next iteration)
+     *     found[n] = start; n++;
+     * }
+     * return n - first;
+     * </pre>
+     */
+    private static byte[] classFile(int[] clueTypes, char[] clueLetters, int[] clueLettersInt) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(50);
+
+        out.writeShort(CP_COUNT);
+        utf8(out, "dev/derivada/ClueCompiler$Compiled"); // 1
+        classRef(out, 1); // 2
+        utf8(out, "java/lang/Object"); // 3
+        classRef(out, 3); // 4
+        utf8(out, "dev/derivada/ClueCompiler$Matcher"); // 5
+        classRef(out, 5); // 6
+        utf8(out, "<init>"); // 7
+        utf8(out, "()V"); // 8
+        nameAndType(out, CP_INIT, CP_VOID_DESC); // 9
+        methodRef(out, CP_OBJECT_CLASS, 9); // 10
+        utf8(out, "Code"); // 11
+        utf8(out, "match"); // 12
+        utf8(out, "(Ldev/derivada/WordTable;[JII[I)I"); // 13
+        utf8(out, "dev/derivada/WordTable"); // 14
+        classRef(out, 14); // 15
+        utf8(out, "hasLetterAt"); // 16
+        utf8(out, "(III)Z"); // 17
+        nameAndType(out, 16, 17); // 18
+        methodRef(out, 15, 18); // 19
+
+        out.writeShort(0x0001 | 0x0010 | 0x0020); // public final super
+        out.writeShort(CP_THIS_CLASS);
+        out.writeShort(CP_OBJECT_CLASS);
+        out.writeShort(1);
+        out.writeShort(CP_MATCHER_CLASS);
+        out.writeShort(0); // fields
+
+        out.writeShort(2); // methods
+        Code init = new Code();
+        init.op(ALOAD).u1(0);
+        init.op(INVOKESPECIAL).u2(CP_OBJECT_INIT);
+        init.op(RETURN);
+        method(out, CP_INIT, CP_VOID_DESC, 1, 1, init);
+        method(out, CP_MATCH, CP_MATCH_DESC, 4, L_START + 1, match(clueTypes, clueLetters, clueLettersInt));
+
+        out.writeShort(0); // attributes
+        return bytes.toByteArray();
+    }
+
+    private static Code match(int[] clueTypes, char[] clueLetters, int[] clueLettersInt) {
+        Code code = new Code();
+        code.op(ILOAD).u1(L_I).op(ISTORE).u1(L_N);
+        code.op(ILOAD).u1(L_I).op(ISTORE).u1(L_START);
+        code.op(LCONST_0).op(LSTORE).u1(L_VALUE);
+        int loop = code.size();
+        code.op(ILOAD).u1(L_I).op(ILOAD).u1(L_END);
+        int exit = code.jump(IF_ICMPGE);
+        code.op(ALOAD).u1(L_VALUES).op(ILOAD).u1(L_I).op(LALOAD).op(LSTORE).u1(L_VALUE);
+
+        int[] rejects = new int[clueTypes.length];
+        for (int j = 0; j < clueTypes.length; j++) {
+            switch (clueTypes[j]) {
+                case -1:
+                    // The remainder is smaller than the prime, so it fits an int
+                    code.op(LLOAD).u1(L_VALUE).op(BIPUSH).u1(primes[clueLettersInt[j]]).op(I2L).op(LREM).op(L2I);
+                    rejects[j] = code.jump(IFEQ);
+                    break;
+                case 0:
+                    code.op(LLOAD).u1(L_VALUE).op(BIPUSH).u1(primes[clueLettersInt[j]]).op(I2L).op(LREM).op(L2I);
+                    rejects[j] = code.jump(IFNE);
+                    break;
+                default:
+                    code.op(ALOAD).u1(L_WORDS).op(ILOAD).u1(L_I);
+                    code.op(BIPUSH).u1(clueTypes[j] - 1).op(BIPUSH).u1(clueLetters[j]);
+                    code.op(INVOKEVIRTUAL).u2(CP_HAS_LETTER_AT);
+                    rejects[j] = code.jump(IFEQ);
+                    break;
+            }
+        }
+        code.op(ALOAD).u1(L_FOUND).op(ILOAD).u1(L_N).op(ILOAD).u1(L_I).op(IASTORE);
+        code.op(IINC).u1(L_N).u1(1);
+
+        int next = code.size();
+        for (int reject : rejects)
+            code.target(reject, next);
+        code.op(IINC).u1(L_I).u1(1);
+        code.target(code.jump(GOTO), loop);
+        code.target(exit, code.size());
+        code.op(ILOAD).u1(L_N).op(ILOAD).u1(L_START).op(ISUB).op(IRETURN);
+        return code;
+    }
+
+    private static void method(DataOutputStream out, int name, int descriptor, int maxStack, int maxLocals, Code code) throws IOException {
+        out.writeShort(0x0001); // public
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(1);
+        out.writeShort(CP_CODE);
+        out.writeInt(12 + code.size());
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.size());
+        out.write(code.bytes, 0, code.size());
+        out.writeShort(0); // exception table
+        out.writeShort(0); // attributes
+    }
+
+    private static void utf8(DataOutputStream out, String value) throws IOException {
+        out.writeByte(1);
+        out.writeUTF(value);
+    }
+
+    private static void classRef(DataOutputStream out, int name) throws IOException {
+        out.writeByte(7);
+        out.writeShort(name);
+    }
+
+    private static void nameAndType(DataOutputStream out, int name, int descriptor) throws IOException {
+        out.writeByte(12);
+        out.writeShort(name);
+        out.writeShort(descriptor);
+    }
+
+    private static void methodRef(DataOutputStream out, int owner, int nameAndType) throws IOException {
+        out.writeByte(10);
+        out.writeShort(owner);
+        out.writeShort(nameAndType);
+    }
+
+    /**
+     * Bytecode of a method, jumps are written with a placeholder offset and patched with target()
+     */
+    private static final class Code {
+        byte[] bytes = new byte[256];
+        int size;
+
+        Code op(int opcode) {
+            return u1(opcode);
+        }
+
+        Code u1(int value) {
+            if (size == bytes.length)
+                bytes = Arrays.copyOf(bytes, size * 2);
+            bytes[size++] = (byte) value;
+            return this;
+        }
+
+        Code u2(int value) {
+            return u1(value >> 8).u1(value);
+        }
+
+        /**
+         * @return The position of the jump, to pass to target()
+         */
+        int jump(int opcode) {
+            int at = size;
+            op(opcode).u2(0);
+            return at;
+        }
+
+        void target(int jump, int target) {
+            int offset = target - jump;
+            if (offset != (short) offset)
+                throw new IllegalStateException("Too many clues to compile, jump of " + offset + " bytes");
+            bytes[jump + 1] = (byte) (offset >> 8);
+            bytes[jump + 2] = (byte) offset;
+        }
+
+        int size() {
+            return size;
+        }
+    }
+}
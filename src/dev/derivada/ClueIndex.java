@@ -0,0 +1,151 @@
+package dev.derivada;
+
+import java.util.List;
+
+/**
+ * Inverted index from clues to the words that satisfy them
+ * <p>
+ * For every possible clue (letter x type, same ones as WordleTool.sortedClues) stores a bitset with one bit per
+ * dictionary index, set if the word satisfies the clue. A query is then just the AND of the bitsets of its clues,
+ * 64 words at a time.
+ */
+public class ClueIndex {
+    private static final int ALPHABET_SIZE = 26;
+
+    private final WordTable words;
+    private final int wordSize;
+    private final int blocks;
+    // bitsets[slot(type, letter)][block], bit i of block b is word b * 64 + i
+    private final long[][] bitsets;
+
+    public ClueIndex(WordTable words) {
+        this(words, new long[ALPHABET_SIZE * (words.getWordSize() + 2)][(words.size() + Long.SIZE - 1) / Long.SIZE]);
+
+        // Presence (type 0) and position (type n) bitsets, one pass over the dictionary
+        for (int i = 0; i < words.size(); i++) {
+            long bit = 1L << i;
+            for (int p = 0; p < wordSize; p++) {
+                char c = words.charAt(i, p);
+                bitsets[slot(0, c)][i >>> 6] |= bit;
+                bitsets[slot(p + 1, c)][i >>> 6] |= bit;
+            }
+        }
+        // Absence (type -1) bitsets are the complement of presence, without the padding bits of the last block
+        long lastBlockMask = words.size() % Long.SIZE == 0 ? -1L : (1L << words.size()) - 1;
+        for (int l = 0; l < ALPHABET_SIZE; l++) {
+            long[] present = bitsets[slot(0, (char) ('a' + l))];
+            long[] absent = bitsets[slot(-1, (char) ('a' + l))];
+            for (int b = 0; b < blocks; b++)
+                absent[b] = ~present[b];
+            if (blocks > 0)
+                absent[blocks - 1] &= lastBlockMask;
+        }
+    }
+
+    /**
+     * Uses bitsets computed beforehand (see BinaryDictionary), one per clue in slot order
+     */
+    ClueIndex(WordTable words, long[][] bitsets) {
+        assert bitsets.length == ALPHABET_SIZE * (words.getWordSize() + 2);
+        this.words = words;
+        this.wordSize = words.getWordSize();
+        this.blocks = (words.size() + Long.SIZE - 1) / Long.SIZE;
+        this.bitsets = bitsets;
+    }
+
+    private int slot(int type, char letter) {
+        return (letter - 'a') * (wordSize + 2) + type + 1;
+    }
+
+    /**
+     * @return The slot of the clue (index in getBitsets()), -1 if no word can satisfy it
+     */
+    int slot(Clue clue) {
+        if (clue.getType() < -1 || clue.getType() > wordSize || clue.getLetter() < 'a' || clue.getLetter() > 'z')
+            return -1;
+        return slot(clue.getType(), clue.getLetter());
+    }
+
+    /**
+     * @return The bitset of the words satisfying the clue, must not be modified
+     */
+    public long[] bitset(Clue clue) {
+        if (clue.getType() > wordSize)
+            return new long[blocks];
+        return bitsets[slot(clue.getType(), clue.getLetter())];
+    }
+
+    /**
+     * Applies the clues to the whole dictionary
+     *
+     * @param clues:  see WordleTool class docs
+     * @param result: output bitset, at least (words.size() + 63) / 64 longs
+     * @return The number of valid words (bits set in result)
+     */
+    public int solve(List<Clue> clues, long[] result) {
+        long start = Metrics.start();
+        long[][] selected = new long[clues.size()][];
+        for (int j = 0; j < selected.length; j++)
+            selected[j] = bitset(clues.get(j));
+
+        int n = 0;
+        for (int b = 0; b < blocks; b++) {
+            long acc = b == blocks - 1 && words.size() % Long.SIZE != 0 ? (1L << words.size()) - 1 : -1L;
+            for (long[] bits : selected)
+                acc &= bits[b];
+            result[b] = acc;
+            n += Long.bitCount(acc);
+        }
+        Metrics.query(Metrics.CLUE_INDEX, start, clues.size(), n);
+        return n;
+    }
+
+    /**
+     * Same as solve(List, long[]) but writes the dictionary indexes of the valid words
+     *
+     * @param result: output buffer, at least as big as the dictionary
+     * @return The number of valid words written to result
+     */
+    public int solve(List<Clue> clues, int[] result) {
+        long[] bits = new long[blocks];
+        solve(clues, bits);
+        return toIndexes(bits, result);
+    }
+
+    public String[] solve(List<Clue> clues, int maxLength) {
+        if (maxLength <= 0) {
+            maxLength = Integer.MAX_VALUE;
+        }
+        int[] result = new int[words.size()];
+        int n = Math.min(solve(clues, result), maxLength);
+        return words.get(result, n);
+    }
+
+    public static int toIndexes(long[] bits, int[] result) {
+        int n = 0;
+        for (int b = 0; b < bits.length; b++) {
+            long block = bits[b];
+            while (block != 0) {
+                result[n++] = (b << 6) + Long.numberOfTrailingZeros(block);
+                block &= block - 1;
+            }
+        }
+        return n;
+    }
+
+    long[][] getBitsets() {
+        return bitsets;
+    }
+
+    public int getWordSize() {
+        return wordSize;
+    }
+
+    public int size() {
+        return words.size();
+    }
+
+    public int getBlocks() {
+        return blocks;
+    }
+}
@@ -0,0 +1,107 @@
+package dev.derivada;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Canonical form of a list of clues: a bitset with one bit per possible clue, in ClueIndex slot order
+ * (letter * (word size + 2) + type + 1)
+ * <p>
+ * The same clues in any order or repeated give equal sets with the same hash, so they can be used as map keys. Subsets
+ * are a couple of ANDs per 64 clues.
+ */
+public final class ClueSet {
+    private static final int ALPHABET_SIZE = 26;
+
+    private final int wordSize;
+    private final long[] slots;
+    private final int hash;
+
+    private ClueSet(int wordSize, long[] slots) {
+        this.wordSize = wordSize;
+        this.slots = slots;
+        this.hash = 31 * wordSize + Arrays.hashCode(slots);
+    }
+
+    /**
+     * @param clues: see WordleTool class docs, types must be between -1 and wordSize
+     */
+    public static ClueSet of(List<Clue> clues, int wordSize) {
+        long[] slots = new long[(ALPHABET_SIZE * (wordSize + 2) + Long.SIZE - 1) / Long.SIZE];
+        for (Clue c : clues) {
+            if (c.getType() < -1 || c.getType() > wordSize || c.getLetter() < 'a' || c.getLetter() > 'z')
+                throw new IllegalArgumentException("Clue out of range for " + wordSize + " letter words: " + c);
+            int slot = (c.getLetter() - 'a') * (wordSize + 2) + c.getType() + 1;
+            slots[slot >>> 6] |= 1L << slot;
+        }
+        return new ClueSet(wordSize, slots);
+    }
+
+    /**
+     * @return true if every clue of other is also in this set
+     */
+    public boolean containsAll(ClueSet other) {
+        if (other.wordSize != wordSize)
+            return false;
+        for (int b = 0; b < slots.length; b++) {
+            if ((other.slots[b] & ~slots[b]) != 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return The clues of this set that aren't in other
+     */
+    public ClueSet minus(ClueSet other) {
+        assert other.wordSize == wordSize;
+        long[] difference = new long[slots.length];
+        for (int b = 0; b < slots.length; b++)
+            difference[b] = slots[b] & ~other.slots[b];
+        return new ClueSet(wordSize, difference);
+    }
+
+    public int size() {
+        int n = 0;
+        for (long block : slots)
+            n += Long.bitCount(block);
+        return n;
+    }
+
+    /**
+     * @return The clues of the set, in slot order
+     */
+    public List<Clue> clues() {
+        List<Clue> clues = new ArrayList<>(size());
+        for (int b = 0; b < slots.length; b++) {
+            for (long block = slots[b]; block != 0; block &= block - 1) {
+                int slot = (b << 6) + Long.numberOfTrailingZeros(block);
+                clues.add(new Clue(slot % (wordSize + 2) - 1, (char) ('a' + slot / (wordSize + 2))));
+            }
+        }
+        return clues;
+    }
+
+    public int getWordSize() {
+        return wordSize;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof ClueSet))
+            return false;
+        ClueSet c = (ClueSet) o;
+        return c.wordSize == wordSize && Arrays.equals(c.slots, slots);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return clues().toString();
+    }
+}
@@ -0,0 +1,216 @@
+package dev.derivada;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Selectivity statistics of the dictionary, used to decide in which order the clues of a query are applied
+ * <p>
+ * Computed in a single parallel pass over the dictionary (chunks of CHUNK_SIZE words counted separately and then
+ * added up):
+ * <p>
+ * 1. clueCounts: how many words satisfy each clue, in ClueIndex slot order (letter * (word size + 2) + type + 1),
+ * which covers the per-letter presence counts (type 0) and the per-position letter counts (type n)
+ * <p>
+ * 2. pairCounts: how many words contain both letters a and b, for every pair (a * 26 + b, a == b is the presence count)
+ * <p>
+ * The pair counts give the probability of a letter being present or not given that another one is (or isn't), which is
+ * used to estimate how many words pass a clue after the previous clues of the same query were applied.
+ */
+public class ClueStats {
+    static final int CHUNK_SIZE = 1024;
+    private static final int ALPHABET_SIZE = 26;
+
+    private final int size;
+    private final int wordSize;
+    private final int[] clueCounts;
+    private final int[] pairCounts;
+
+    public ClueStats(int size, int wordSize, int[] clueCounts, int[] pairCounts) {
+        assert clueCounts.length == ALPHABET_SIZE * (wordSize + 2) && pairCounts.length == ALPHABET_SIZE * ALPHABET_SIZE;
+        this.size = size;
+        this.wordSize = wordSize;
+        this.clueCounts = clueCounts;
+        this.pairCounts = pairCounts;
+    }
+
+    public static ClueStats compute(WordTable words) {
+        int wordSize = words.getWordSize();
+        int clues = ALPHABET_SIZE * (wordSize + 2);
+        int chunks = (words.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        // Every chunk counts into its own arrays ([clueCounts | pairCounts]), then they are added up
+        int[] counts = IntStream.range(0, chunks).parallel().mapToObj(chunk -> {
+            int[] local = new int[clues + ALPHABET_SIZE * ALPHABET_SIZE];
+            int end = Math.min(words.size(), (chunk + 1) * CHUNK_SIZE);
+            for (int i = chunk * CHUNK_SIZE; i < end; i++) {
+                int mask = 0;
+                for (int p = 0; p < wordSize; p++) {
+                    int l = words.charAt(i, p) - 'a';
+                    local[l * (wordSize + 2) + p + 2]++;
+                    mask |= 1 << l;
+                }
+                for (int a = mask; a != 0; a &= a - 1) {
+                    int la = Integer.numberOfTrailingZeros(a);
+                    local[la * (wordSize + 2) + 1]++;
+                    for (int b = mask; b != 0; b &= b - 1)
+                        local[clues + la * ALPHABET_SIZE + Integer.numberOfTrailingZeros(b)]++;
+                }
+            }
+            return local;
+        }).reduce(new int[clues + ALPHABET_SIZE * ALPHABET_SIZE], (a, b) -> {
+            int[] sum = new int[a.length];
+            for (int i = 0; i < sum.length; i++)
+                sum[i] = a[i] + b[i];
+            return sum;
+        });
+
+        int[] clueCounts = new int[clues];
+        int[] pairCounts = new int[ALPHABET_SIZE * ALPHABET_SIZE];
+        System.arraycopy(counts, 0, clueCounts, 0, clues);
+        System.arraycopy(counts, clues, pairCounts, 0, pairCounts.length);
+        // Type -1 (letter not in word) is the complement of type 0
+        for (int l = 0; l < ALPHABET_SIZE; l++)
+            clueCounts[l * (wordSize + 2)] = words.size() - clueCounts[l * (wordSize + 2) + 1];
+        return new ClueStats(words.size(), wordSize, clueCounts, pairCounts);
+    }
+
+    /**
+     * Orders the clues of a query so the ones expected to discard more words go first. The first clue is the most
+     * selective one, every next one is the most selective given the clues before it (see class docs). Repeated clues
+     * are dropped
+     *
+     * @return The clues in the order they should be applied
+     */
+    public List<Clue> order(List<Clue> clues) {
+        int[] types = new int[clues.size()];
+        char[] letters = new char[clues.size()];
+        int n = order(Clue.types(clues), Clue.letters(clues), types, letters);
+        return Clue.list(Arrays.copyOf(types, n), Arrays.copyOf(letters, n));
+    }
+
+    /**
+     * order() on clue arrays, written to the caller's buffers so a query allocates nothing
+     *
+     * @param orderedTypes:   output, at least clueTypes.length long
+     * @param orderedLetters: output, parallel to orderedTypes
+     * @return The number of clues written, repeated clues are dropped
+     */
+    public int order(int[] clueTypes, char[] clueLetters, int[] orderedTypes, char[] orderedLetters) {
+        assert clueTypes.length == clueLetters.length;
+        int n = 0;
+        CLUE:
+        for (int i = 0; i < clueTypes.length; i++) {
+            for (int j = 0; j < n; j++) {
+                if (orderedTypes[j] == clueTypes[i] && orderedLetters[j] == clueLetters[i])
+                    continue CLUE;
+            }
+            orderedTypes[n] = clueTypes[i];
+            orderedLetters[n++] = clueLetters[i];
+        }
+        // Clues 0 to k - 1 are ordered, the best of the pending ones moves to k and the ones before it shift up
+        for (int k = 0; k < n; k++) {
+            int best = k;
+            double bestEstimate = Double.MAX_VALUE;
+            for (int i = k; i < n; i++) {
+                double estimate = estimate(orderedTypes[i], orderedLetters[i], orderedTypes, orderedLetters, k);
+                if (estimate < bestEstimate) {
+                    best = i;
+                    bestEstimate = estimate;
+                }
+            }
+            int type = orderedTypes[best];
+            char letter = orderedLetters[best];
+            System.arraycopy(orderedTypes, k, orderedTypes, k + 1, best - k);
+            System.arraycopy(orderedLetters, k, orderedLetters, k + 1, best - k);
+            orderedTypes[k] = type;
+            orderedLetters[k] = letter;
+        }
+        return n;
+    }
+
+    /**
+     * @return The estimated fraction of the words that satisfy the clue among the ones that satisfy the given clues
+     */
+    public double estimate(Clue clue, List<Clue> given) {
+        return estimate(clue.getType(), clue.getLetter(), Clue.types(given), Clue.letters(given), given.size());
+    }
+
+    /**
+     * @param givenCount: the given clues are the first givenCount of givenTypes and givenLetters
+     */
+    private double estimate(int type, char letter, int[] givenTypes, char[] givenLetters, int givenCount) {
+        double p = size == 0 ? 0 : (double) getCount(type, letter) / size;
+        if (p == 0)
+            return 0;
+        int x = letter - 'a';
+        boolean xPresent = type != -1;
+        double px = letterProbability(x, xPresent);
+        for (int g = 0; g < givenCount; g++) {
+            // Each given clue scales the estimate by how much it changes the odds of the clue letter being (or not) there
+            double conditional = conditionalProbability(x, xPresent, givenLetters[g] - 'a', givenTypes[g] != -1);
+            p *= conditional / px;
+        }
+        return Math.min(p, 1);
+    }
+
+    /**
+     * @return The fraction of the dictionary that satisfies the clue
+     */
+    public double fraction(Clue clue) {
+        return size == 0 ? 0 : (double) getCount(clue) / size;
+    }
+
+    /**
+     * @return How many words satisfy the clue
+     */
+    public int getCount(Clue clue) {
+        return getCount(clue.getType(), clue.getLetter());
+    }
+
+    private int getCount(int type, char letter) {
+        if (type > wordSize)
+            return 0;
+        return clueCounts[(letter - 'a') * (wordSize + 2) + type + 1];
+    }
+
+    private int presence(int letter) {
+        return pairCounts[letter * ALPHABET_SIZE + letter];
+    }
+
+    private double letterProbability(int x, boolean present) {
+        return (double) (present ? presence(x) : size - presence(x)) / size;
+    }
+
+    /**
+     * @return P(letter x present (or not) | letter y present (or not))
+     */
+    private double conditionalProbability(int x, boolean xPresent, int y, boolean yPresent) {
+        int both = pairCounts[x * ALPHABET_SIZE + y];
+        int joint;
+        if (xPresent)
+            joint = yPresent ? both : presence(x) - both;
+        else
+            joint = yPresent ? presence(y) - both : size - presence(x) - presence(y) + both;
+        int marginal = yPresent ? presence(y) : size - presence(y);
+        return marginal == 0 ? 0 : (double) joint / marginal;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return How many words satisfy each clue, in ClueIndex slot order
+     */
+    public int[] getClueCounts() {
+        return clueCounts;
+    }
+
+    /**
+     * @return How many words contain both letters, indexed by a * 26 + b
+     */
+    public int[] getPairCounts() {
+        return pairCounts;
+    }
+}
@@ -0,0 +1,418 @@
+package dev.derivada;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Precomputed guess of every feedback history of a game, so a round is a lookup instead of a ranking
+ * <p>
+ * For a fixed dictionary the best next guess only depends on the guesses and patterns seen so far, so the whole game
+ * can be searched offline by build():
+ * <p>
+ * 1. At each node the width guesses with the highest entropy (see GuessRanker) are tried. Each one is expanded for
+ * every pattern it can show and the cheapest is kept. The cost is the number of answers not found in max rounds
+ * (failures) and then the total guesses to find the rest, so the tree minimizes the expected guesses among the trees
+ * with the fewest failures it finds
+ * <p>
+ * 2. With 2 candidates or less, or in the last round, the first candidate is guessed
+ * <p>
+ * 3. Nodes are memoized by candidate set and rounds left (many histories end up in the same candidates), and the
+ * children of a node are searched in parallel on the fork-join pool
+ * <p>
+ * Width 1 is the entropy strategy, bigger widths find better trees but the search grows like width^rounds. The tree
+ * covers normal mode only. It is written as a DAG (each memoized node once) and memory mapped by load(), following a
+ * pattern is a binary search in the children of the node. File format (big endian):
+ * <p>
+ * magic "WTRE" | int version | int word size | int number of words | int dictionary hash | int max rounds | int width
+ * | int answers | int total guesses | int failures | int nodes | nodes, root first
+ * <p>
+ * node = int guess | unsigned byte children | byte[children] patterns, sorted | int[children] child offsets. Offsets
+ * count from the root, the solved pattern has no child.
+ */
+public class DecisionTree {
+    static final int MAGIC = 0x57545245; // "WTRE"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 11 * Integer.BYTES;
+
+    private final int wordSize;
+    private final int maxRounds;
+    private final int width;
+    private final int answers;
+    private final int totalGuesses;
+    private final int failures;
+    private final int nodeCount;
+    // Only the nodes, the header is skipped
+    private final ByteBuffer nodes;
+
+    private DecisionTree(int wordSize, int maxRounds, int width, int answers, int totalGuesses, int failures,
+                         int nodeCount, ByteBuffer nodes) {
+        this.wordSize = wordSize;
+        this.maxRounds = maxRounds;
+        this.width = width;
+        this.answers = answers;
+        this.totalGuesses = totalGuesses;
+        this.failures = failures;
+        this.nodeCount = nodeCount;
+        this.nodes = nodes;
+    }
+
+    /**
+     * Searches the tree, see class docs
+     *
+     * @param answers: dictionary indexes of the possible answers, in dictionary order
+     * @param guesses: dictionary indexes of the allowed guesses
+     * @param width:   guesses tried at each node
+     */
+    public static DecisionTree build(PatternMatrix matrix, int[] answers, int[] guesses, int maxRounds, int width,
+                                     ForkJoinPool pool) {
+        if (maxRounds <= 0 || width <= 0)
+            throw new IllegalArgumentException("Max rounds and width must be positive, got " + maxRounds + " and " + width);
+        if (answers.length == 0)
+            throw new IllegalArgumentException("No answers to build a tree for");
+        Search search = new Search(matrix, guesses, width, new GuessRanker(matrix, pool));
+        Node root = pool.invoke(search.new NodeTask(answers.clone(), maxRounds));
+
+        // Offsets of every distinct node, children after their first parent
+        Map<Node, Integer> offsets = new IdentityHashMap<>();
+        List<Node> order = new ArrayList<>();
+        int size = layout(root, offsets, order, 0);
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.BIG_ENDIAN);
+        for (Node node : order) {
+            buffer.putInt(node.guess).put((byte) node.patterns.length);
+            for (int pattern : node.patterns)
+                buffer.put((byte) pattern);
+            for (Node child : node.children)
+                buffer.putInt(offsets.get(child));
+        }
+        buffer.clear();
+        return new DecisionTree(matrix.getWordSize(), maxRounds, width, answers.length, guesses(root.cost),
+                failures(root.cost), order.size(), buffer);
+    }
+
+    /**
+     * @param end: bytes taken by the nodes laid out so far
+     * @return The bytes taken after laying out the node and its children
+     */
+    private static int layout(Node node, Map<Node, Integer> offsets, List<Node> order, int end) {
+        if (offsets.containsKey(node))
+            return end;
+        offsets.put(node, end);
+        order.add(node);
+        end += Integer.BYTES + 1 + node.patterns.length * (1 + Integer.BYTES);
+        for (Node child : node.children)
+            end = layout(child, offsets, order, end);
+        return end;
+    }
+
+    /**
+     * Memory maps a tree written by write()
+     *
+     * @return The tree, or null if the file was written for another dictionary, version, max rounds or width
+     */
+    public static DecisionTree load(Path path, String[] words, int wordSize, int maxRounds, int width) throws IOException {
+        ByteBuffer map = MappedFile.map(path, MAGIC, VERSION, HEADER_SIZE);
+        if (map == null || map.getInt() != wordSize || map.getInt() != words.length
+                || map.getInt() != Arrays.hashCode(words) || map.getInt() != maxRounds || map.getInt() != width)
+            return null;
+        int answers = map.getInt(), totalGuesses = map.getInt(), failures = map.getInt(), nodeCount = map.getInt();
+        return new DecisionTree(wordSize, maxRounds, width, answers, totalGuesses, failures, nodeCount, map.slice());
+    }
+
+    /**
+     * Writes the tree atomically, see MappedFile.write()
+     */
+    public void write(Path path, String[] words) throws IOException {
+        ByteBuffer header = MappedFile.header(HEADER_SIZE, MAGIC, VERSION);
+        header.putInt(wordSize).putInt(words.length).putInt(Arrays.hashCode(words)).putInt(maxRounds).putInt(width)
+                .putInt(answers).putInt(totalGuesses).putInt(failures).putInt(nodeCount).flip();
+        ByteBuffer body = nodes.duplicate();
+        body.clear();
+        MappedFile.write(path, header, body);
+    }
+
+    /**
+     * Loads the tree from the path if it matches the dictionary and settings, otherwise builds it over the whole
+     * dictionary (every word is an answer and a guess) and writes it there
+     */
+    public static DecisionTree loadOrBuild(Path path, String[] words, PatternMatrix matrix, int maxRounds, int width,
+                                           ForkJoinPool pool) throws IOException {
+        if (Files.exists(path)) {
+            DecisionTree tree = load(path, words, matrix.getWordSize(), maxRounds, width);
+            if (tree != null)
+                return tree;
+            System.out.println("Decision tree at " + path + " doesn't match the dictionary or settings, building it again");
+        }
+        int[] allWords = new int[words.length];
+        for (int i = 0; i < allWords.length; i++)
+            allWords[i] = i;
+        DecisionTree tree = build(matrix, allWords, allWords, maxRounds, width, pool);
+        tree.write(path, words);
+        return tree;
+    }
+
+    public int root() {
+        return 0;
+    }
+
+    /**
+     * @return The dictionary index of the guess of the node
+     */
+    public int guess(int node) {
+        return nodes.getInt(node);
+    }
+
+    /**
+     * @return The node reached when the guess of the node shows the pattern, -1 if no answer left shows it (or it is
+     * the solved pattern, or the last round)
+     */
+    public int child(int node, int pattern) {
+        int count = nodes.get(node + Integer.BYTES) & 0xFF;
+        int first = node + Integer.BYTES + 1;
+        int low = 0, high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int p = nodes.get(first + mid) & 0xFF;
+            if (p < pattern) {
+                low = mid + 1;
+            } else if (p > pattern) {
+                high = mid - 1;
+            } else {
+                return nodes.getInt(first + count + mid * Integer.BYTES);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Follows the rounds played in the session
+     *
+     * @return The node of the current round, -1 if a round wasn't the guess of the tree or was played with clues
+     */
+    public int find(GameSession session) {
+        int node = root();
+        for (int r = 1; r <= session.getRound(); r++) {
+            if (session.getGuess(r) != guess(node))
+                return -1;
+            node = child(node, session.getPattern(r));
+            if (node < 0)
+                return -1;
+        }
+        return node;
+    }
+
+    public int getMaxRounds() {
+        return maxRounds;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getAnswers() {
+        return answers;
+    }
+
+    public int getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return The expected guesses of the answers found in max rounds
+     */
+    public double getAverageGuesses() {
+        return answers == failures ? 0 : (double) totalGuesses / (answers - failures);
+    }
+
+    /**
+     * @return The number of distinct nodes (memoized nodes count once)
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return The size of the nodes in bytes, without the header
+     */
+    public int getByteSize() {
+        return nodes.capacity();
+    }
+
+    // Costs are failures in the high int and guesses in the low one, so comparing them compares failures first
+    private static long cost(int failures, int guesses) {
+        return ((long) failures << 32) + guesses;
+    }
+
+    private static int failures(long cost) {
+        return (int) (cost >>> 32);
+    }
+
+    private static int guesses(long cost) {
+        return (int) cost;
+    }
+
+    private static final class Node {
+        final int guess;
+        final long cost;
+        // Patterns with a child, sorted, and the children
+        final int[] patterns;
+        final Node[] children;
+
+        Node(int guess, long cost, int[] patterns, Node[] children) {
+            this.guess = guess;
+            this.cost = cost;
+            this.patterns = patterns;
+            this.children = children;
+        }
+    }
+
+    private static final class Key {
+        final int[] candidates;
+        final int roundsLeft;
+        final int hash;
+
+        Key(int[] candidates, int roundsLeft) {
+            this.candidates = candidates;
+            this.roundsLeft = roundsLeft;
+            this.hash = 31 * Arrays.hashCode(candidates) + roundsLeft;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key other = (Key) o;
+            return hash == other.hash && roundsLeft == other.roundsLeft && Arrays.equals(candidates, other.candidates);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Search {
+        private final PatternMatrix matrix;
+        private final int[] guesses;
+        private final int width;
+        private final GuessRanker ranker;
+        private final int patternCount;
+        private final int solvedPattern;
+        private final Map<Key, Node> memo = new ConcurrentHashMap<>();
+
+        Search(PatternMatrix matrix, int[] guesses, int width, GuessRanker ranker) {
+            this.matrix = matrix;
+            this.guesses = guesses;
+            this.width = width;
+            this.ranker = ranker;
+            this.patternCount = Feedback.patternCount(matrix.getWordSize());
+            this.solvedPattern = Feedback.solved(matrix.getWordSize());
+        }
+
+        private final class NodeTask extends RecursiveTask<Node> {
+            private final int[] candidates;
+            private final int roundsLeft;
+
+            NodeTask(int[] candidates, int roundsLeft) {
+                this.candidates = candidates;
+                this.roundsLeft = roundsLeft;
+            }
+
+            @Override
+            protected Node compute() {
+                int n = candidates.length;
+                if (n == 1)
+                    return new Node(candidates[0], cost(0, 1), new int[0], new Node[0]);
+                // Two tasks can search the same set at once, the first one stored wins
+                Key key = new Key(candidates, roundsLeft);
+                Node memoized = memo.get(key);
+                if (memoized != null)
+                    return memoized;
+
+                int[] options = n <= 2 || roundsLeft == 1 ? new int[]{candidates[0]}
+                        : ranker.rank(candidates, n, guesses, guesses.length, width);
+                // Partitions of every option, each one searched by its own task
+                int[][] patterns = new int[options.length][];
+                List<List<NodeTask>> children = new ArrayList<>(options.length);
+                List<NodeTask> all = new ArrayList<>();
+                int[] lostTo = new int[options.length];
+                for (int o = 0; o < options.length; o++) {
+                    List<NodeTask> tasks = new ArrayList<>();
+                    patterns[o] = partition(options[o], tasks);
+                    if (roundsLeft == 1) {
+                        for (NodeTask task : tasks)
+                            lostTo[o] += task.candidates.length;
+                        tasks.clear();
+                        patterns[o] = new int[0];
+                    }
+                    children.add(tasks);
+                    all.addAll(tasks);
+                }
+                invokeAll(all);
+
+                Node best = null;
+                for (int o = 0; o < options.length; o++) {
+                    List<NodeTask> tasks = children.get(o);
+                    Node[] nodes = new Node[tasks.size()];
+                    int failures = lostTo[o], guessSum = 0;
+                    for (int c = 0; c < nodes.length; c++) {
+                        nodes[c] = tasks.get(c).join();
+                        failures += DecisionTree.failures(nodes[c].cost);
+                        guessSum += DecisionTree.guesses(nodes[c].cost);
+                    }
+                    // Every answer found in this subtree takes this guess too
+                    Node node = new Node(options[o], cost(failures, n - failures + guessSum), patterns[o], nodes);
+                    if (best == null || node.cost < best.cost)
+                        best = node;
+                }
+                Node stored = memo.putIfAbsent(key, best);
+                return stored != null ? stored : best;
+            }
+
+            /**
+             * Groups the candidates by the pattern they show for the guess, keeping dictionary order
+             *
+             * @param tasks: gets a task per pattern other than the solved one
+             * @return The patterns of the tasks, sorted
+             */
+            private int[] partition(int guess, List<NodeTask> tasks) {
+                int[] counts = new int[patternCount];
+                for (int candidate : candidates)
+                    counts[matrix.get(guess, candidate)]++;
+                int[][] groups = new int[patternCount][];
+                int groupCount = 0;
+                for (int p = 0; p < patternCount; p++) {
+                    if (counts[p] > 0 && p != solvedPattern) {
+                        groups[p] = new int[counts[p]];
+                        groupCount++;
+                    }
+                    counts[p] = 0;
+                }
+                for (int candidate : candidates) {
+                    int p = matrix.get(guess, candidate);
+                    if (groups[p] != null)
+                        groups[p][counts[p]++] = candidate;
+                }
+                int[] patterns = new int[groupCount];
+                int g = 0;
+                for (int p = 0; p < patternCount; p++) {
+                    if (groups[p] != null) {
+                        patterns[g++] = p;
+                        tasks.add(new NodeTask(groups[p], roundsLeft - 1));
+                    }
+                }
+                return patterns;
+            }
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package dev.derivada;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The words of one language and size with every index and solver built on them, as published by DictionaryRegistry
+ * and by WordleTool.setWordSize()
+ * <p>
+ * Immutable: switching or reloading a dictionary builds a new one and swaps in the reference, so a query that got this
+ * one finishes on it even if the dictionary changes meanwhile, and never mixes the words of one dictionary with the
+ * solvers of another. Every query method can be called from any number of threads. The query cache fills up as it is
+ * used and the String words and the hard mode bitset are built on first use, all of them from the words of this index.
+ */
+public final class DictionaryIndex {
+    private static final char[] letters = {'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h', 'i', 'j', 'k', 'l', 'm', 'n', 'o',
+            'p', 'q', 'r', 's', 't', 'u', 'v', 'w', 'x', 'y', 'z'};
+
+    private final String language;
+    private final Path source;
+    private final long generation;
+    private final WordTable words;
+    private final long[] wordValues;
+    private final ClueStats clueStats;
+    private final BitmaskSolver solver;
+    private final ClueIndex clueIndex;
+    private final ParallelSolver parallelSolver;
+    private final BatchSolver batchSolver;
+    private final QueryCache queryCache;
+    private final WordTrie trie;
+    // Every clue of the word size, the ones matching less words first (for display, queries use clueStats.order())
+    private final Clue[] sortedClues;
+    // Built on first use, see getWordStrings() and getHardMode()
+    private volatile String[] wordStrings;
+    private volatile HardMode hardMode;
+
+    private DictionaryIndex(String language, Path source, long generation, BinaryDictionary compiled, ForkJoinPool pool,
+                            int cacheEntries, long cacheWords) {
+        this.language = language;
+        this.source = source;
+        this.generation = generation;
+        this.words = compiled.getWords();
+        this.wordValues = compiled.getWordValues();
+        this.clueStats = new ClueStats(words.size(), words.getWordSize(), compiled.getClueCounts(),
+                compiled.getPairCounts());
+        this.solver = new BitmaskSolver(words, compiled.getLetterMasks(), compiled.getPositions());
+        this.clueIndex = new ClueIndex(words, compiled.getClueBitsets());
+        this.parallelSolver = new ParallelSolver(words, wordValues, pool);
+        this.batchSolver = new BatchSolver(clueIndex, pool);
+        this.queryCache = new QueryCache(solver, cacheEntries, cacheWords);
+        SetupEvent event = SetupEvent.begin("trie", words.getWordSize());
+        this.trie = WordTrie.build(words);
+        event.end(words.size());
+        this.sortedClues = sortClues(clueStats.getClueCounts(), words.getWordSize());
+    }
+
+    /**
+     * @param source:       text dictionary the words were read from
+     * @param generation:   1 for the first load, one more on every reload
+     * @param compiled:     the words of one size and their encodings, see BinaryDictionary
+     * @param pool:         runs the parallel and batch solvers
+     * @param cacheEntries: limits of the query cache, see QueryCache
+     */
+    static DictionaryIndex build(String language, Path source, long generation, BinaryDictionary compiled,
+                                 ForkJoinPool pool, int cacheEntries, long cacheWords) {
+        return new DictionaryIndex(language, source, generation, compiled, pool, cacheEntries, cacheWords);
+    }
+
+    /**
+     * Generates all possible clues and sorts them by how many words satisfy them. Sort keys are count << 32 | index,
+     * so equal counts keep the generation order (letter, then type)
+     */
+    private static Clue[] sortClues(int[] clueCounts, int wordSize) {
+        int clueTypes = wordSize + 2;
+        long[] keys = new long[letters.length * clueTypes];
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = (long) clueCounts[i] << 32 | i;
+        Arrays.sort(keys);
+        Clue[] sorted = new Clue[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            int index = (int) keys[i];
+            sorted[i] = new Clue(index % clueTypes - 1, letters[index / clueTypes]);
+        }
+        return sorted;
+    }
+
+    /**
+     * @param clues:     see WordleTool class docs, positions checked exactly (see BitmaskSolver)
+     * @param maxLength: the maximum number of words fetched, unlimited for values <= 0
+     * @return The valid words, in dictionary order
+     */
+    public String[] solve(List<Clue> clues, int maxLength) {
+        int[] result = new int[words.size()];
+        int n = solver.solve(Clue.types(clues), Clue.letters(clues), result);
+        return words.get(result, maxLength <= 0 ? n : Math.min(n, maxLength));
+    }
+
+    /**
+     * @param maxLength: the maximum number of words fetched, unlimited for values <= 0, see WordTrie.find()
+     * @return The words matching the query, in dictionary order
+     */
+    public String[] find(WordQuery query, int maxLength) {
+        int[] result = new int[words.size()];
+        return words.get(result, trie.find(query, result, maxLength));
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    public Path getSource() {
+        return source;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public int getWordSize() {
+        return words.getWordSize();
+    }
+
+    public WordTable getWords() {
+        return words;
+    }
+
+    /**
+     * @return The words as Strings, built on the first call (the solvers work on getWords())
+     */
+    public String[] getWordStrings() {
+        String[] strings = wordStrings;
+        if (strings == null)
+            wordStrings = strings = words.toArray();
+        return strings;
+    }
+
+    /**
+     * @return Primes values of the words, parallel to getWords(), must not be modified
+     */
+    public long[] getWordValues() {
+        return wordValues;
+    }
+
+    public ClueStats getClueStats() {
+        return clueStats;
+    }
+
+    public BitmaskSolver getSolver() {
+        return solver;
+    }
+
+    public ClueIndex getClueIndex() {
+        return clueIndex;
+    }
+
+    public ParallelSolver getParallelSolver() {
+        return parallelSolver;
+    }
+
+    public BatchSolver getBatchSolver() {
+        return batchSolver;
+    }
+
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    public WordTrie getTrie() {
+        return trie;
+    }
+
+    /**
+     * @return Every clue of the word size, the ones matching less words first, must not be modified
+     */
+    public Clue[] getSortedClues() {
+        return sortedClues;
+    }
+
+    /**
+     * @return The legal guesses of hard mode with every word allowed as a guess, built on the first call
+     */
+    public HardMode getHardMode() {
+        HardMode mode = hardMode;
+        if (mode == null) {
+            int[] allWords = new int[words.size()];
+            for (int i = 0; i < allWords.length; i++)
+                allWords[i] = i;
+            hardMode = mode = new HardMode(clueIndex, allWords);
+        }
+        return mode;
+    }
+}
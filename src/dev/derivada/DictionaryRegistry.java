@@ -0,0 +1,244 @@
+package dev.derivada;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+/**
+ * The dictionaries of several languages, every word size of each one, kept up to date with their files
+ * <p>
+ * 1. open() reads every text dictionary at the same time on the pool, and builds the index of each word size in
+ * parallel too (see DictionaryIndex)
+ * <p>
+ * 2. A daemon thread watches the directories of the dictionaries (WatchService). When a file changes it waits until
+ * there are no more changes for QUIET_MILLIS (editors and copies write in several steps), then reads it again and
+ * builds its indexes, one reload at a time
+ * <p>
+ * 3. Each language and size has an AtomicReference to its current index, a reload sets it once the new index is
+ * complete. get() is a plain read of that reference: queries never lock or wait for a reload, and the ones already
+ * running finish on the index they got. If a reload fails (the file is being replaced, unreadable, left without words
+ * of any of the sizes...) the old indexes stay and the next change tries again.
+ */
+public class DictionaryRegistry implements AutoCloseable {
+    static final long QUIET_MILLIS = 200;
+
+    private final ForkJoinPool pool;
+    private final int[] wordSizes;
+    private final int cacheEntries;
+    private final long cacheWords;
+    // Text dictionary of each language, normalized absolute paths
+    private final Map<String, Path> sources;
+    // indexes.get(language).get(i) = current index of wordSizes[i], filled by the constructor and only read afterwards
+    private final Map<String, List<AtomicReference<DictionaryIndex>>> indexes = new HashMap<>();
+    private final WatchService watcher;
+    private final Thread watcherThread;
+
+    private DictionaryRegistry(Map<String, Path> sources, int[] wordSizes, ForkJoinPool pool, int cacheEntries,
+                               long cacheWords) throws IOException {
+        this.pool = pool;
+        this.wordSizes = wordSizes.clone();
+        this.cacheEntries = cacheEntries;
+        this.cacheWords = cacheWords;
+        this.sources = new LinkedHashMap<>();
+        for (Map.Entry<String, Path> source : sources.entrySet())
+            this.sources.put(source.getKey(), source.getValue().toAbsolutePath().normalize());
+        loadAll();
+        this.watcher = FileSystems.getDefault().newWatchService();
+        this.watcherThread = new Thread(this::watch, "dictionary-watcher");
+        watcherThread.setDaemon(true);
+    }
+
+    /**
+     * Loads every dictionary and starts watching their files
+     *
+     * @param sources:      text dictionary of each language, see WordList
+     * @param wordSizes:    the word sizes to index, between 1 and WordleTool.MAX_PRIMES_WORD_SIZE
+     * @param pool:         loads the dictionaries and runs the solvers of the indexes
+     * @param cacheEntries: limits of the query cache of every index, see QueryCache
+     * @throws IOException if a dictionary can't be read
+     */
+    public static DictionaryRegistry open(Map<String, Path> sources, int[] wordSizes, ForkJoinPool pool,
+                                          int cacheEntries, long cacheWords) throws IOException {
+        if (sources.isEmpty() || wordSizes.length == 0)
+            throw new IllegalArgumentException("No dictionaries or no word sizes");
+        for (int size : wordSizes) {
+            if (size <= 0 || size > WordleTool.MAX_PRIMES_WORD_SIZE)
+                throw new IllegalArgumentException("Word size must be between 1 and " + WordleTool.MAX_PRIMES_WORD_SIZE
+                        + ", got " + size);
+        }
+        if (cacheEntries <= 0 || cacheWords <= 0)
+            throw new IllegalArgumentException("Cache limits must be positive, got " + cacheEntries + " entries and "
+                    + cacheWords + " words");
+        DictionaryRegistry registry = new DictionaryRegistry(sources, wordSizes, pool, cacheEntries, cacheWords);
+        try {
+            for (Path directory : new HashSet<>(registry.directories()))
+                directory.register(registry.watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException err) {
+            registry.close();
+            throw err;
+        }
+        registry.watcherThread.start();
+        return registry;
+    }
+
+    /**
+     * @return The current index of the language and size, null if it isn't in the registry
+     */
+    public DictionaryIndex get(String language, int wordSize) {
+        List<AtomicReference<DictionaryIndex>> references = indexes.get(language);
+        if (references == null)
+            return null;
+        for (int i = 0; i < wordSizes.length; i++) {
+            if (wordSizes[i] == wordSize)
+                return references.get(i).get();
+        }
+        return null;
+    }
+
+    public Set<String> getLanguages() {
+        return Collections.unmodifiableSet(sources.keySet());
+    }
+
+    public int[] getWordSizes() {
+        return wordSizes.clone();
+    }
+
+    /**
+     * Stops watching the files, the indexes can still be used
+     */
+    @Override
+    public void close() {
+        try {
+            watcher.close();
+        } catch (IOException err) {
+            System.out.println("Couldn't close the dictionary watcher!");
+            err.printStackTrace();
+        }
+    }
+
+    private void loadAll() throws IOException {
+        Map<String, ForkJoinTask<DictionaryIndex[]>> tasks = new LinkedHashMap<>();
+        for (Map.Entry<String, Path> source : sources.entrySet())
+            tasks.put(source.getKey(), pool.submit(() -> read(source.getKey(), source.getValue(), 1)));
+        for (Map.Entry<String, ForkJoinTask<DictionaryIndex[]>> task : tasks.entrySet()) {
+            DictionaryIndex[] built = join(task.getValue());
+            List<AtomicReference<DictionaryIndex>> references = new ArrayList<>(wordSizes.length);
+            for (DictionaryIndex index : built)
+                references.add(new AtomicReference<>(index));
+            indexes.put(task.getKey(), references);
+        }
+    }
+
+    /**
+     * Reads the dictionary of the language again and swaps in its new indexes
+     */
+    private void reload(String language) throws IOException {
+        List<AtomicReference<DictionaryIndex>> references = indexes.get(language);
+        long generation = references.get(0).get().getGeneration() + 1;
+        DictionaryIndex[] built = join(pool.submit(() -> read(language, sources.get(language), generation)));
+        // Most likely caught halfway through a rewrite, the next change reloads it again
+        boolean empty = true;
+        for (DictionaryIndex index : built)
+            empty &= index.getWords().size() == 0;
+        if (empty)
+            throw new IOException("No words of the registry sizes in " + sources.get(language));
+        for (int i = 0; i < wordSizes.length; i++)
+            references.get(i).set(built[i]);
+    }
+
+    /**
+     * @return The indexes of every word size, parallel to wordSizes
+     */
+    private DictionaryIndex[] read(String language, Path source, long generation) throws IOException {
+        WordList list = WordList.read(source);
+        return IntStream.range(0, wordSizes.length).parallel()
+                .mapToObj(i -> DictionaryIndex.build(language, source, generation,
+                        WordleTool.compile(list.get(wordSizes[i])), pool, cacheEntries, cacheWords))
+                .toArray(DictionaryIndex[]::new);
+    }
+
+    private static DictionaryIndex[] join(ForkJoinTask<DictionaryIndex[]> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException err) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading a dictionary", err);
+        } catch (ExecutionException err) {
+            if (err.getCause() instanceof IOException)
+                throw (IOException) err.getCause();
+            throw new IllegalStateException("Couldn't build a dictionary index", err.getCause());
+        }
+    }
+
+    private List<Path> directories() {
+        List<Path> directories = new ArrayList<>();
+        for (Path source : sources.values())
+            directories.add(source.getParent());
+        return directories;
+    }
+
+    /**
+     * Body of the watcher thread, see class docs
+     */
+    private void watch() {
+        try {
+            while (true) {
+                Set<String> changed = new LinkedHashSet<>();
+                WatchKey key = watcher.take();
+                // Gathers changes until the files are quiet
+                while (key != null) {
+                    collect(key, changed);
+                    key = watcher.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                for (String language : changed) {
+                    try {
+                        reload(language);
+                        DictionaryIndex index = indexes.get(language).get(0).get();
+                        System.out.println("Reloaded dictionary " + language + " (" + index.getSource()
+                                + "), generation " + index.getGeneration());
+                    } catch (IOException | RuntimeException err) {
+                        System.out.println("Couldn't reload dictionary " + language + ", keeping the previous one!");
+                        err.printStackTrace();
+                    }
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException err) {
+            // close()
+        }
+    }
+
+    /**
+     * Adds the languages whose dictionary changed in the events of the key
+     */
+    private void collect(WatchKey key, Set<String> changed) {
+        Path directory = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Events were lost, anything in the directory may have changed
+                for (Map.Entry<String, Path> source : sources.entrySet()) {
+                    if (source.getValue().getParent().equals(directory))
+                        changed.add(source.getKey());
+                }
+                continue;
+            }
+            Path file = directory.resolve((Path) event.context());
+            for (Map.Entry<String, Path> source : sources.entrySet()) {
+                if (source.getValue().equals(file))
+                    changed.add(source.getKey());
+            }
+        }
+        key.reset();
+    }
+}
@@ -0,0 +1,56 @@
+package dev.derivada;
+
+/**
+ * Guesses the word with the highest expected information (see GuessRanker) among the allowed guesses
+ * <p>
+ * The first guess is always the same for a dictionary, so it is only computed once. In hard mode only the legal guesses
+ * of each round are ranked (see HardMode)
+ */
+public class EntropyStrategy implements GuessStrategy {
+    private final GuessRanker ranker;
+    private final int[] guesses;
+    // null in normal mode
+    private final HardMode hardMode;
+    private volatile int firstGuess = -1;
+
+    /**
+     * @param guesses: dictionary indexes of the allowed guesses
+     */
+    public EntropyStrategy(GuessRanker ranker, int[] guesses) {
+        this(ranker, guesses, null);
+    }
+
+    /**
+     * @param guesses:  dictionary indexes of the allowed guesses
+     * @param hardMode: legal guesses of hard mode, built with the same allowed guesses, null for normal mode
+     */
+    public EntropyStrategy(GuessRanker ranker, int[] guesses, HardMode hardMode) {
+        this.ranker = ranker;
+        this.guesses = guesses;
+        this.hardMode = hardMode;
+    }
+
+    @Override
+    public int nextGuess(GameSession session) {
+        int count = session.getCandidateCount();
+        // With two candidates left no guess does better than trying one of them
+        if (count <= 2)
+            return session.getCandidate(0);
+        if (session.getRound() == 0 && firstGuess >= 0)
+            return firstGuess;
+
+        int[] candidates = new int[count];
+        session.getCandidates(candidates);
+        int guess;
+        if (hardMode != null && session.getRound() > 0) {
+            int[] legal = new int[session.getSolver().size()];
+            int n = hardMode.legalGuesses(session, legal);
+            guess = ranker.rank(candidates, count, legal, n, 1)[0];
+        } else {
+            guess = ranker.rank(candidates, count, guesses, guesses.length, 1)[0];
+        }
+        if (session.getRound() == 0)
+            firstGuess = guess;
+        return guess;
+    }
+}
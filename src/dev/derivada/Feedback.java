@@ -0,0 +1,109 @@
+package dev.derivada;
+
+/**
+ * Wordle feedback (green / yellow / gray) of a guess against an answer
+ * <p>
+ * The feedback is encoded in base 3, one digit per position with position 1 as the least significant digit:
+ * 0 = gray, 1 = yellow, 2 = green. Ex: guess "abbey", answer "babes" -> y y g g . -> 1 + 1*3 + 2*9 + 2*27 + 0*81 = 76
+ * <p>
+ * Duplicate letters work like the original game: greens are matched first, then every other letter of the guess is
+ * yellow only while the answer still has unmatched copies of it. Ex: guess "sassy", answer "essay" -> y y g . g
+ */
+public final class Feedback {
+    public static final int GRAY = 0, YELLOW = 1, GREEN = 2;
+    // Max word size so that every pattern fits in an unsigned byte (3^5 = 243)
+    public static final int MAX_BYTE_WORD_SIZE = 5;
+
+    private Feedback() {
+    }
+
+    /**
+     * @return The number of different patterns for words of the given size (3^wordSize)
+     */
+    public static int patternCount(int wordSize) {
+        int count = 1;
+        for (int i = 0; i < wordSize; i++)
+            count *= 3;
+        return count;
+    }
+
+    /**
+     * @return The pattern of the guess against the answer, both words must have the same size
+     */
+    public static int pattern(String guess, String answer) {
+        int size = guess.length();
+        assert size == answer.length();
+        // Bit i set if position i of the answer is already matched to a letter of the guess, greens first
+        int matched = 0;
+        for (int i = 0; i < size; i++) {
+            if (guess.charAt(i) == answer.charAt(i))
+                matched |= 1 << i;
+        }
+        int greens = matched;
+
+        int pattern = 0, weight = 1;
+        for (int i = 0; i < size; i++, weight *= 3) {
+            if ((greens & (1 << i)) != 0) {
+                pattern += GREEN * weight;
+                continue;
+            }
+            // Yellow if there is a copy of the letter left in the answer, gray otherwise
+            char g = guess.charAt(i);
+            for (int j = 0; j < size; j++) {
+                if ((matched & (1 << j)) == 0 && answer.charAt(j) == g) {
+                    matched |= 1 << j;
+                    pattern += YELLOW * weight;
+                    break;
+                }
+            }
+        }
+        return pattern;
+    }
+
+    /**
+     * @return The color (GRAY, YELLOW or GREEN) of the given position (starting at 0) of the pattern
+     */
+    public static int digit(int pattern, int position) {
+        for (int i = 0; i < position; i++)
+            pattern /= 3;
+        return pattern % 3;
+    }
+
+    /**
+     * @return The pattern of a word solved at the first try (all greens)
+     */
+    public static int solved(int wordSize) {
+        return patternCount(wordSize) - 1;
+    }
+
+    /**
+     * @return The pattern as text, G = green, Y = yellow, . = gray. Ex: 76 -> YYGG.
+     */
+    public static String toString(int pattern, int wordSize) {
+        StringBuilder sb = new StringBuilder(wordSize);
+        for (int i = 0; i < wordSize; i++) {
+            sb.append(pattern % 3 == GREEN ? 'G' : pattern % 3 == YELLOW ? 'Y' : '.');
+            pattern /= 3;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Inverse of toString(), G = green, Y = yellow, . = gray (any case)
+     *
+     * @throws IllegalArgumentException if the text isn't wordSize letters of G, Y and .
+     */
+    public static int parse(String text, int wordSize) {
+        if (text.length() != wordSize)
+            throw new IllegalArgumentException("Pattern " + text + " isn't " + wordSize + " letters long");
+        int pattern = 0;
+        for (int i = wordSize - 1; i >= 0; i--) {
+            char c = Character.toUpperCase(text.charAt(i));
+            int color = c == 'G' ? GREEN : c == 'Y' ? YELLOW : c == '.' ? GRAY : -1;
+            if (color < 0)
+                throw new IllegalArgumentException("Pattern " + text + " must only have G, Y and .");
+            pattern = pattern * 3 + color;
+        }
+        return pattern;
+    }
+}
@@ -0,0 +1,203 @@
+package dev.derivada;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One game of Wordle, narrowing the candidates round by round
+ * <p>
+ * The candidates are kept as arrays of dictionary indexes, one per round played. A new round only checks its own clues
+ * against the words that survived the previous round (they already satisfy the older clues), and undoing a round just
+ * drops its array. Round 0 is the whole dictionary and is never materialized. The hints of every round (see HardMode)
+ * are kept too, for the hard mode guesses, and so are the guess and pattern of the rounds played with a pattern, for
+ * the strategies that follow the history (see DecisionTree).
+ */
+public class GameSession {
+    private final BitmaskSolver solver;
+    private final int maxRounds;
+    // candidates[r] = dictionary indexes still valid after round r (1 <= r <= round), sizes[r] how many
+    private final int[][] candidates;
+    private final int[] sizes;
+    // hints.get(r - 1) = hints revealed in round r
+    private final List<List<Clue>> hints = new ArrayList<>();
+    // guesses[r - 1], patterns[r - 1] = guess and pattern of round r, -1 if played with clues
+    private final int[] guesses;
+    private final int[] patterns;
+    private int round;
+
+    public GameSession(BitmaskSolver solver, int maxRounds) {
+        if (maxRounds <= 0)
+            throw new IllegalArgumentException("Max rounds must be positive, got " + maxRounds);
+        this.solver = solver;
+        this.maxRounds = maxRounds;
+        this.candidates = new int[maxRounds + 1][];
+        this.sizes = new int[maxRounds + 1];
+        this.sizes[0] = solver.size();
+        this.guesses = new int[maxRounds];
+        this.patterns = new int[maxRounds];
+    }
+
+    /**
+     * Applies the clues of a new guess to the current candidates
+     *
+     * @param clues: clues revealed by the guess, see WordleTool class docs
+     * @return The number of candidates left
+     */
+    public int play(List<Clue> clues) {
+        if (round == maxRounds)
+            throw new IllegalStateException("No rounds left, the game is limited to " + maxRounds + " rounds");
+        int[] clueTypes = Clue.types(clues);
+        char[] clueLetters = Clue.letters(clues);
+
+        int n;
+        int[] next;
+        if (round == 0) {
+            next = new int[solver.size()];
+            n = solver.solve(clueTypes, clueLetters, next);
+        } else {
+            next = new int[sizes[round]];
+            n = solver.filter(clueTypes, clueLetters, candidates[round], sizes[round], next);
+        }
+        round++;
+        candidates[round] = next;
+        sizes[round] = n;
+        hints.add(HardMode.hints(clues));
+        guesses[round - 1] = -1;
+        patterns[round - 1] = -1;
+        return n;
+    }
+
+    /**
+     * Keeps the candidates that would show exactly the given pattern for the guess. Unlike the clues this also uses
+     * what yellows and duplicated letters tell about positions
+     *
+     * @param guess:   dictionary index of the guessed word
+     * @param pattern: feedback of the guess, see Feedback
+     * @param matrix:  pattern matrix of the same dictionary
+     * @return The number of candidates left
+     */
+    public int play(int guess, int pattern, PatternMatrix matrix) {
+        if (round == maxRounds)
+            throw new IllegalStateException("No rounds left, the game is limited to " + maxRounds + " rounds");
+        int count = sizes[round];
+        int[] next = new int[count];
+        int n = 0;
+        for (int k = 0; k < count; k++) {
+            int i = round == 0 ? k : candidates[round][k];
+            next[n] = i;
+            n += matrix.get(guess, i) == pattern ? 1 : 0;
+        }
+        round++;
+        candidates[round] = next;
+        sizes[round] = n;
+        hints.add(HardMode.hints(solver.getWord(guess), pattern));
+        guesses[round - 1] = guess;
+        patterns[round - 1] = pattern;
+        return n;
+    }
+
+    /**
+     * Goes back to the candidates before the last round
+     *
+     * @return false if no round has been played
+     */
+    public boolean undo() {
+        if (round == 0)
+            return false;
+        candidates[round] = null;
+        hints.remove(round - 1);
+        round--;
+        return true;
+    }
+
+    /**
+     * @return The hints revealed in all the rounds played, the clues every hard mode guess must satisfy
+     */
+    public List<Clue> getHints() {
+        List<Clue> all = new ArrayList<>();
+        for (List<Clue> h : hints)
+            all.addAll(h);
+        return all;
+    }
+
+    /**
+     * @param round: a round played, starting at 1
+     * @return The dictionary index of the guess of the round, -1 if it was played with clues
+     */
+    public int getGuess(int round) {
+        checkRound(round);
+        return guesses[round - 1];
+    }
+
+    /**
+     * @param round: a round played, starting at 1
+     * @return The pattern shown by the guess of the round, -1 if it was played with clues
+     */
+    public int getPattern(int round) {
+        checkRound(round);
+        return patterns[round - 1];
+    }
+
+    private void checkRound(int round) {
+        if (round < 1 || round > this.round)
+            throw new IndexOutOfBoundsException("Round " + round + " not played, " + this.round + " rounds played");
+    }
+
+    public int getRound() {
+        return round;
+    }
+
+    public int getMaxRounds() {
+        return maxRounds;
+    }
+
+    public boolean hasRoundsLeft() {
+        return round < maxRounds;
+    }
+
+    public int getCandidateCount() {
+        return sizes[round];
+    }
+
+    /**
+     * @return The dictionary index of the i-th candidate
+     */
+    public int getCandidate(int i) {
+        if (i < 0 || i >= sizes[round])
+            throw new IndexOutOfBoundsException("Candidate " + i + " out of " + sizes[round]);
+        return round == 0 ? i : candidates[round][i];
+    }
+
+    /**
+     * @param buffer: output buffer, at least getCandidateCount() long
+     * @return The number of candidates written to buffer (dictionary indexes)
+     */
+    public int getCandidates(int[] buffer) {
+        int n = sizes[round];
+        if (round == 0) {
+            for (int i = 0; i < n; i++)
+                buffer[i] = i;
+        } else {
+            System.arraycopy(candidates[round], 0, buffer, 0, n);
+        }
+        return n;
+    }
+
+    public BitmaskSolver getSolver() {
+        return solver;
+    }
+
+    /**
+     * @param maxLength: the maximum length fetched, unlimited for values <= 0
+     * @return The current candidates, in dictionary order
+     */
+    public String[] getWords(int maxLength) {
+        if (maxLength <= 0) {
+            maxLength = Integer.MAX_VALUE;
+        }
+        String[] solution = new String[Math.min(sizes[round], maxLength)];
+        for (int i = 0; i < solution.length; i++)
+            solution[i] = solver.getWord(getCandidate(i));
+        return solution;
+    }
+}
@@ -0,0 +1,188 @@
+package dev.derivada;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Plays full games against a list of answers with a guess strategy, one game per task in the common fork-join pool
+ * <p>
+ * Every round the strategy chooses a guess, the feedback is taken from the pattern matrix and the candidates that
+ * would not show that same feedback are dropped. A game fails if the answer isn't guessed in max rounds.
+ * <p>
+ * Multi-board games (see MultiBoardSession) work the same with one answer per board, they fail if any board is left
+ * unsolved.
+ */
+public class GameSimulator {
+    private final BitmaskSolver solver;
+    private final PatternMatrix matrix;
+    private final int maxRounds;
+
+    public GameSimulator(BitmaskSolver solver, PatternMatrix matrix, int maxRounds) {
+        assert solver.size() == matrix.size();
+        this.solver = solver;
+        this.matrix = matrix;
+        this.maxRounds = maxRounds;
+    }
+
+    /**
+     * @param answers: dictionary indexes of the answers, one game each
+     */
+    public Report run(int[] answers, GuessStrategy strategy) {
+        int solvedPattern = Feedback.solved(matrix.getWordSize());
+        // Per game: guesses used (0 = failed) and the time of each round in nanoseconds
+        int[] guessesUsed = new int[answers.length];
+        long[][] roundTimes = new long[answers.length][];
+
+        long startTime = System.nanoTime();
+        IntStream.range(0, answers.length).parallel().forEach(game -> {
+            int answer = answers[game];
+            GameSession session = new GameSession(solver, maxRounds);
+            long[] times = new long[maxRounds];
+            int round = 0;
+            while (round < maxRounds) {
+                long roundStart = System.nanoTime();
+                int guess = strategy.nextGuess(session);
+                int pattern = matrix.get(guess, answer);
+                if (pattern != solvedPattern)
+                    session.play(guess, pattern, matrix);
+                times[round++] = System.nanoTime() - roundStart;
+                if (pattern == solvedPattern) {
+                    guessesUsed[game] = round;
+                    break;
+                }
+            }
+            roundTimes[game] = Arrays.copyOf(times, round);
+        });
+        return new Report(maxRounds, guessesUsed, roundTimes, System.nanoTime() - startTime);
+    }
+
+    /**
+     * @param answers: dictionary indexes of the answers of every board, one game each
+     */
+    public Report run(int[][] answers, MultiBoardStrategy strategy) {
+        int[] guessesUsed = new int[answers.length];
+        long[][] roundTimes = new long[answers.length][];
+
+        long startTime = System.nanoTime();
+        IntStream.range(0, answers.length).parallel().forEach(game -> {
+            int[] boardAnswers = answers[game];
+            MultiBoardSession session = new MultiBoardSession(solver, matrix.getWordSize(), boardAnswers.length, maxRounds);
+            int[] patterns = new int[boardAnswers.length];
+            long[] times = new long[maxRounds];
+            int round = 0;
+            while (session.hasRoundsLeft()) {
+                long roundStart = System.nanoTime();
+                int guess = strategy.nextGuess(session);
+                for (int b = 0; b < boardAnswers.length; b++)
+                    patterns[b] = matrix.get(guess, boardAnswers[b]);
+                session.play(guess, patterns, matrix);
+                times[round++] = System.nanoTime() - roundStart;
+                if (session.isWon()) {
+                    guessesUsed[game] = round;
+                    break;
+                }
+            }
+            roundTimes[game] = Arrays.copyOf(times, round);
+        });
+        return new Report(maxRounds, guessesUsed, roundTimes, System.nanoTime() - startTime);
+    }
+
+    public static class Report {
+        private final int games;
+        private final long elapsedNanos;
+        // distribution[n] = games solved with n guesses, distribution[0] = failures
+        private final int[] distribution;
+        // roundTimes[r] = sorted times of every round r + 1 played, allTimes = all of them sorted
+        private final long[][] roundTimes;
+        private final long[] allTimes;
+
+        Report(int maxRounds, int[] guessesUsed, long[][] gameRoundTimes, long elapsedNanos) {
+            this.games = guessesUsed.length;
+            this.elapsedNanos = elapsedNanos;
+            this.distribution = new int[maxRounds + 1];
+            for (int g : guessesUsed)
+                distribution[g]++;
+
+            int[] counts = new int[maxRounds];
+            int total = 0;
+            for (long[] times : gameRoundTimes) {
+                for (int r = 0; r < times.length; r++)
+                    counts[r]++;
+                total += times.length;
+            }
+            this.roundTimes = new long[maxRounds][];
+            for (int r = 0; r < maxRounds; r++)
+                roundTimes[r] = new long[counts[r]];
+            this.allTimes = new long[total];
+            Arrays.fill(counts, 0);
+            int n = 0;
+            for (long[] times : gameRoundTimes) {
+                for (int r = 0; r < times.length; r++) {
+                    roundTimes[r][counts[r]++] = times[r];
+                    allTimes[n++] = times[r];
+                }
+            }
+            for (long[] times : roundTimes)
+                Arrays.sort(times);
+            Arrays.sort(allTimes);
+        }
+
+        public int getGames() {
+            return games;
+        }
+
+        public int getFailures() {
+            return distribution[0];
+        }
+
+        /**
+         * @return The number of games solved with the given number of guesses
+         */
+        public int getSolvedIn(int guesses) {
+            return distribution[guesses];
+        }
+
+        public double getGamesPerSecond() {
+            return games / (elapsedNanos / 1e9);
+        }
+
+        public double getAverageGuesses() {
+            long sum = 0;
+            int solved = 0;
+            for (int g = 1; g < distribution.length; g++) {
+                sum += (long) g * distribution[g];
+                solved += distribution[g];
+            }
+            return solved == 0 ? 0 : (double) sum / solved;
+        }
+
+        /**
+         * @param round: round number starting at 1, 0 for all rounds
+         * @param p:     percentile in [0, 100]
+         * @return The round latency percentile in nanoseconds, 0 if no game got to that round
+         */
+        public long getLatencyPercentile(int round, double p) {
+            long[] times = round == 0 ? allTimes : roundTimes[round - 1];
+            if (times.length == 0)
+                return 0;
+            int index = (int) Math.ceil(p / 100 * times.length) - 1;
+            return times[Math.max(0, Math.min(index, times.length - 1))];
+        }
+
+        public void print() {
+            System.out.printf("Games: %d | Time: %.2f s | %.1f games/s\n", games, elapsedNanos / 1e9, getGamesPerSecond());
+            System.out.printf("Average guesses (solved games): %.4f\n", getAverageGuesses());
+            System.out.println("Guesses | games");
+            for (int g = 1; g < distribution.length; g++)
+                System.out.printf("%d | %d\n", g, distribution[g]);
+            System.out.printf("Failed (more than %d guesses) | %d\n", distribution.length - 1, distribution[0]);
+            System.out.println("Round | rounds played | p50 | p90 | p99 | max (latency in us)");
+            for (int r = 0; r <= roundTimes.length; r++) {
+                long[] times = r == 0 ? allTimes : roundTimes[r - 1];
+                System.out.printf("%s | %d | %.1f | %.1f | %.1f | %.1f\n", r == 0 ? "all" : String.valueOf(r), times.length,
+                        getLatencyPercentile(r, 50) / 1e3, getLatencyPercentile(r, 90) / 1e3,
+                        getLatencyPercentile(r, 99) / 1e3, getLatencyPercentile(r, 100) / 1e3);
+            }
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package dev.derivada;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Ranks guesses by the information they are expected to give
+ * <p>
+ * For a guess, the candidates are grouped by the pattern they would show (see Feedback), and the score is the entropy
+ * of that distribution in bits: the higher, the more the guess is expected to narrow down the candidates. The guesses
+ * are split across the fork-join pool, each leaf reuses a single int histogram for all of its guesses.
+ * <p>
+ * With several boards (see MultiBoardSession) a guess scores the sum of its entropies on every board. The boards share
+ * the pattern matrix, so the candidates of all of them are merged first (each one with the bitmask of its boards) and
+ * every guess does a single pass over that union, one pattern lookup per word instead of one per word and board.
+ */
+public class GuessRanker {
+    static final int MIN_GUESSES_PER_TASK = 64;
+    // Tasks per worker thread, a few more than one so that idle workers can steal
+    static final int TASKS_PER_WORKER = 4;
+    // Boards of rankBoards(), one bit each in the union masks
+    public static final int MAX_BOARDS = 32;
+    private static final double LN_2 = Math.log(2);
+
+    private final PatternMatrix matrix;
+    private final ForkJoinPool pool;
+    private final int patternCount;
+    // cLogC[c] = c * ln(c), c is never bigger than the dictionary (cLogC[0] = cLogC[1] = 0)
+    private final double[] cLogC;
+
+    public GuessRanker(PatternMatrix matrix, ForkJoinPool pool) {
+        this.matrix = matrix;
+        this.pool = pool;
+        this.patternCount = Feedback.patternCount(matrix.getWordSize());
+        this.cLogC = new double[matrix.size() + 1];
+        for (int c = 2; c < cLogC.length; c++)
+            cLogC[c] = c * Math.log(c);
+    }
+
+    /**
+     * @param candidates:     dictionary indexes of the possible answers
+     * @param candidateCount: number of valid entries in candidates
+     * @param guesses:        dictionary indexes of the allowed guesses
+     * @param guessCount:     number of valid entries in guesses
+     * @param k:              number of guesses returned
+     * @return The dictionary indexes of the best k guesses, best first. Ties go to the guesses that can be the answer
+     */
+    public int[] rank(int[] candidates, int candidateCount, int[] guesses, int guessCount, int k) {
+        double[] scores = scores(candidates, candidateCount, guesses, guessCount);
+        boolean[] isCandidate = new boolean[matrix.size()];
+        for (int i = 0; i < candidateCount; i++)
+            isCandidate[candidates[i]] = true;
+        return top(scores, isCandidate, guesses, guessCount, k);
+    }
+
+    /**
+     * Same as rank() but for several boards at once, see class docs
+     *
+     * @param candidates:      dictionary indexes of the possible answers of each board, at most MAX_BOARDS boards
+     * @param candidateCounts: number of valid entries of each board
+     * @return The dictionary indexes of the best k guesses, best first. Ties go to the guesses that can be the answer
+     * of some board
+     */
+    public int[] rankBoards(int[][] candidates, int[] candidateCounts, int[] guesses, int guessCount, int k) {
+        Union union = new Union(candidates, candidateCounts);
+        double[] scores = boardScores(union, guesses, guessCount);
+        boolean[] isCandidate = new boolean[matrix.size()];
+        for (int i = 0; i < union.size; i++)
+            isCandidate[union.words[i]] = true;
+        return top(scores, isCandidate, guesses, guessCount, k);
+    }
+
+    /**
+     * @return The sum of the entropies on every board of every guess, parallel to guesses
+     */
+    public double[] boardScores(int[][] candidates, int[] candidateCounts, int[] guesses, int guessCount) {
+        return boardScores(new Union(candidates, candidateCounts), guesses, guessCount);
+    }
+
+    private double[] boardScores(Union union, int[] guesses, int guessCount) {
+        double[] scores = new double[guessCount];
+        int perTask = Math.max(MIN_GUESSES_PER_TASK, guessCount / (pool.getParallelism() * TASKS_PER_WORKER) + 1);
+        pool.invoke(new BoardScoreTask(union, guesses, scores, 0, guessCount, perTask));
+        return scores;
+    }
+
+    /**
+     * @param histograms: scratch buffer of at least boards * 3^wordSize ints, overwritten
+     * @return The sum of the expected information in bits of the guess on every board
+     */
+    private double boardEntropy(int guess, Union union, int[] histograms) {
+        int boards = union.counts.length;
+        Arrays.fill(histograms, 0, boards * patternCount, 0);
+        for (int i = 0; i < union.size; i++) {
+            int pattern = matrix.get(guess, union.words[i]);
+            for (int mask = union.masks[i]; mask != 0; mask &= mask - 1)
+                histograms[Integer.numberOfTrailingZeros(mask) * patternCount + pattern]++;
+        }
+
+        double total = 0;
+        for (int b = 0; b < boards; b++) {
+            int n = union.counts[b];
+            if (n <= 1)
+                continue;
+            double sum = 0;
+            for (int p = b * patternCount, end = p + patternCount; p < end; p++)
+                sum += cLogC[histograms[p]];
+            total += Math.log(n) - sum / n;
+        }
+        return total / LN_2;
+    }
+
+    /**
+     * Insertion into a sorted top k, k is small compared to the guesses
+     */
+    private static int[] top(double[] scores, boolean[] isCandidate, int[] guesses, int guessCount, int k) {
+        int[] best = new int[Math.min(k, guessCount)];
+        double[] bestScores = new double[best.length];
+        int n = 0;
+        for (int g = 0; g < guessCount; g++) {
+            int guess = guesses[g];
+            double score = scores[g];
+            int pos = n;
+            while (pos > 0 && better(score, isCandidate[guess], bestScores[pos - 1], isCandidate[best[pos - 1]]))
+                pos--;
+            if (pos == best.length)
+                continue;
+            int last = Math.min(n, best.length - 1);
+            System.arraycopy(best, pos, best, pos + 1, last - pos);
+            System.arraycopy(bestScores, pos, bestScores, pos + 1, last - pos);
+            best[pos] = guess;
+            bestScores[pos] = score;
+            if (n < best.length)
+                n++;
+        }
+        return best;
+    }
+
+    private static boolean better(double score, boolean candidate, double otherScore, boolean otherCandidate) {
+        return score > otherScore || (score == otherScore && candidate && !otherCandidate);
+    }
+
+    /**
+     * @return The entropy of every guess, parallel to guesses
+     */
+    public double[] scores(int[] candidates, int candidateCount, int[] guesses, int guessCount) {
+        double[] scores = new double[guessCount];
+        int perTask = Math.max(MIN_GUESSES_PER_TASK, guessCount / (pool.getParallelism() * TASKS_PER_WORKER) + 1);
+        pool.invoke(new ScoreTask(candidates, candidateCount, guesses, scores, 0, guessCount, perTask));
+        return scores;
+    }
+
+    /**
+     * @param histogram: scratch buffer of at least 3^wordSize ints, overwritten
+     * @return The expected information in bits of the guess over the candidates
+     */
+    public double entropy(int guess, int[] candidates, int candidateCount, int[] histogram) {
+        if (candidateCount == 0)
+            return 0;
+        Arrays.fill(histogram, 0, patternCount, 0);
+        for (int i = 0; i < candidateCount; i++)
+            histogram[matrix.get(guess, candidates[i])]++;
+
+        // H = log2(n) - sum(c * log2(c)) / n
+        double sum = 0;
+        for (int p = 0; p < patternCount; p++)
+            sum += cLogC[histogram[p]];
+        return (Math.log(candidateCount) - sum / candidateCount) / LN_2;
+    }
+
+    /**
+     * Candidates of every board merged, each word once with the bitmask of the boards it is a candidate of
+     */
+    private final class Union {
+        final int[] words;
+        final int[] masks;
+        final int size;
+        // Candidates of each board
+        final int[] counts;
+
+        Union(int[][] candidates, int[] candidateCounts) {
+            if (candidates.length > MAX_BOARDS)
+                throw new IllegalArgumentException("At most " + MAX_BOARDS + " boards, got " + candidates.length);
+            int[] wordMasks = new int[matrix.size()];
+            int n = 0;
+            for (int b = 0; b < candidates.length; b++) {
+                for (int i = 0; i < candidateCounts[b]; i++) {
+                    int word = candidates[b][i];
+                    n += wordMasks[word] == 0 ? 1 : 0;
+                    wordMasks[word] |= 1 << b;
+                }
+            }
+            this.words = new int[n];
+            this.masks = new int[n];
+            this.size = n;
+            this.counts = candidateCounts.clone();
+            n = 0;
+            for (int word = 0; word < wordMasks.length; word++) {
+                if (wordMasks[word] != 0) {
+                    words[n] = word;
+                    masks[n++] = wordMasks[word];
+                }
+            }
+        }
+    }
+
+    private final class BoardScoreTask extends RecursiveAction {
+        private final Union union;
+        private final int[] guesses;
+        private final double[] scores;
+        private final int start, end, perTask;
+
+        BoardScoreTask(Union union, int[] guesses, double[] scores, int start, int end, int perTask) {
+            this.union = union;
+            this.guesses = guesses;
+            this.scores = scores;
+            this.start = start;
+            this.end = end;
+            this.perTask = perTask;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= perTask) {
+                int[] histograms = new int[union.counts.length * patternCount];
+                for (int g = start; g < end; g++)
+                    scores[g] = boardEntropy(guesses[g], union, histograms);
+            } else {
+                int half = start + (end - start) / 2;
+                invokeAll(new BoardScoreTask(union, guesses, scores, start, half, perTask),
+                        new BoardScoreTask(union, guesses, scores, half, end, perTask));
+            }
+        }
+    }
+
+    private final class ScoreTask extends RecursiveAction {
+        private final int[] candidates, guesses;
+        private final int candidateCount;
+        private final double[] scores;
+        private final int start, end, perTask;
+
+        ScoreTask(int[] candidates, int candidateCount, int[] guesses, double[] scores, int start, int end, int perTask) {
+            this.candidates = candidates;
+            this.candidateCount = candidateCount;
+            this.guesses = guesses;
+            this.scores = scores;
+            this.start = start;
+            this.end = end;
+            this.perTask = perTask;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= perTask) {
+                int[] histogram = new int[patternCount];
+                for (int g = start; g < end; g++)
+                    scores[g] = entropy(guesses[g], candidates, candidateCount, histogram);
+            } else {
+                int half = start + (end - start) / 2;
+                invokeAll(new ScoreTask(candidates, candidateCount, guesses, scores, start, half, perTask),
+                        new ScoreTask(candidates, candidateCount, guesses, scores, half, end, perTask));
+            }
+        }
+    }
+}
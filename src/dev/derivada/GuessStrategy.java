@@ -0,0 +1,15 @@
+package dev.derivada;
+
+/**
+ * Chooses the next guess of a game, used by the simulator
+ * <p>
+ * Implementations are shared by all the games of a simulation, so they must be safe to call from many threads
+ */
+public interface GuessStrategy {
+
+    /**
+     * @param session: the game, with the candidates left after the rounds played so far
+     * @return The dictionary index of the next guess
+     */
+    int nextGuess(GameSession session);
+}
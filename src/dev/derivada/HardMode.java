@@ -0,0 +1,81 @@
+package dev.derivada;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Legal guesses of hard mode (expert-mode in the config): every guess must keep the revealed greens in place and use
+ * the revealed yellows
+ * <p>
+ * Those hints are clues themselves (green -> letter in position n, yellow -> letter in unknown position), so the legal
+ * guesses are read from the clue index, the AND of a few bitsets and the bitset of the allowed guesses, instead of
+ * checking every word. The legal guesses are usually much fewer than the allowed ones, so ranking them is cheaper than
+ * ranking in normal mode.
+ */
+public class HardMode {
+    private final ClueIndex index;
+    // Bitset of the allowed guesses, same layout as the clue index
+    private final long[] allowed;
+
+    /**
+     * @param guesses: dictionary indexes of the allowed guesses
+     */
+    public HardMode(ClueIndex index, int[] guesses) {
+        this.index = index;
+        this.allowed = new long[index.getBlocks()];
+        for (int guess : guesses)
+            allowed[guess >>> 6] |= 1L << guess;
+    }
+
+    /**
+     * @return The hints revealed by the feedback of a guess (see Feedback), as clues
+     */
+    public static List<Clue> hints(String guess, int pattern) {
+        List<Clue> hints = new ArrayList<>();
+        for (int p = 0; p < guess.length(); p++) {
+            switch (Feedback.digit(pattern, p)) {
+                case Feedback.GREEN:
+                    hints.add(new Clue(p + 1, guess.charAt(p)));
+                    break;
+                case Feedback.YELLOW:
+                    hints.add(new Clue(0, guess.charAt(p)));
+                    break;
+                default:
+                    break;
+            }
+        }
+        return hints;
+    }
+
+    /**
+     * @return The hints among the clues (the letters in the word, gray clues don't restrict hard mode guesses)
+     */
+    public static List<Clue> hints(List<Clue> clues) {
+        List<Clue> hints = new ArrayList<>(clues.size());
+        for (Clue c : clues) {
+            if (c.getType() >= 0)
+                hints.add(c);
+        }
+        return hints;
+    }
+
+    /**
+     * @param hints:  hints revealed so far
+     * @param result: output buffer for the dictionary indexes of the legal guesses, at least as big as the dictionary
+     * @return The number of legal guesses written to result, in dictionary order
+     */
+    public int legalGuesses(List<Clue> hints, int[] result) {
+        long[] bits = new long[allowed.length];
+        index.solve(hints, bits);
+        for (int b = 0; b < bits.length; b++)
+            bits[b] &= allowed[b];
+        return ClueIndex.toIndexes(bits, result);
+    }
+
+    /**
+     * @return The number of legal guesses for the next round of the game written to result, see legalGuesses(List, int[])
+     */
+    public int legalGuesses(GameSession session, int[] result) {
+        return legalGuesses(session.getHints(), result);
+    }
+}
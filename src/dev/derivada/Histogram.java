@@ -0,0 +1,80 @@
+package dev.derivada;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe histogram of positive longs (latencies in nanoseconds, sizes...) with a fixed amount of memory
+ * <p>
+ * Values are grouped in log-linear buckets: every power of two is split in 2^SUB_BITS equal buckets, so a percentile
+ * is off by less than 1 / 2^SUB_BITS of its value (6%). Values under 2^SUB_BITS have a bucket each.
+ */
+public class Histogram {
+    static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray((Long.SIZE - SUB_BITS + 1) * SUB_BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+        counts.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return The biggest value that falls in the bucket
+     */
+    private static long bucketEnd(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        long start = (1L << exponent) + (sub << (exponent - SUB_BITS));
+        return start + (1L << (exponent - SUB_BITS)) - 1;
+    }
+
+    /**
+     * @param p: between 0 and 1, ex: 0.99 for p99
+     * @return The value under which there are p of the recorded values (the end of its bucket), 0 if none was recorded
+     */
+    public long percentile(double p) {
+        long total = count.get();
+        if (total == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(p * total));
+        long seen = 0;
+        for (int b = 0; b < counts.length(); b++) {
+            seen += counts.get(b);
+            if (seen >= rank)
+                return Math.min(bucketEnd(b), max.get());
+        }
+        return max.get();
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public void reset() {
+        for (int b = 0; b < counts.length(); b++)
+            counts.set(b, 0);
+        count.set(0);
+        max.set(0);
+    }
+}
@@ -0,0 +1,99 @@
+package dev.derivada;
+
+/**
+ * The primes solvers of WordleTool as a backend, on the dictionary loaded when the backend is created
+ * <p>
+ * 1. optimized(): solveOptimized() on the calling thread
+ * <p>
+ * 2. multithread(): the fork-join solver (see ParallelSolver)
+ * <p>
+ * Both keep the DictionaryIndex of that dictionary, so they still answer on it after WordleTool.setWordSize() switches
+ * to another one. Clues are ordered with its clue stats first, into buffers kept per calling thread, so a query
+ * allocates nothing.
+ */
+public final class JavaBackend implements SolverBackend {
+    private final DictionaryIndex dictionary;
+    // null for optimized()
+    private final ParallelSolver parallelSolver;
+    // Ordered clues of the query running on each thread
+    private final ThreadLocal<Clues> clues = ThreadLocal.withInitial(Clues::new);
+
+    private JavaBackend(ParallelSolver parallelSolver) {
+        this.dictionary = WordleTool.getDictionary();
+        this.parallelSolver = parallelSolver;
+    }
+
+    /**
+     * Needs preprocessing
+     */
+    static JavaBackend optimized() {
+        return new JavaBackend(null);
+    }
+
+    /**
+     * Needs preprocessing
+     *
+     * @param solver: on the current dictionary too
+     */
+    static JavaBackend multithread(ParallelSolver solver) {
+        return new JavaBackend(solver);
+    }
+
+    @Override
+    public String getName() {
+        return parallelSolver == null ? "java" : "java-multithread";
+    }
+
+    @Override
+    public int size() {
+        return dictionary.getWords().size();
+    }
+
+    @Override
+    public int solve(int[] clueTypes, char[] clueLetters, int maxLength, int[] result) {
+        Clues ordered = clues.get();
+        int n = ordered.order(dictionary.getClueStats(), clueTypes, clueLetters);
+        if (parallelSolver == null)
+            return WordleTool.solveOptimized(dictionary.getWords(), dictionary.getWordValues(), ordered.types[n],
+                    ordered.letters[n], ordered.lettersInt[n], maxLength, result);
+        return parallelSolver.solve(ordered.types[n], ordered.letters[n], ordered.lettersInt[n], maxLength, result);
+    }
+
+    /**
+     * Buffers for the ordered clues, one set per clue count since the solvers take the arrays whole
+     */
+    private static final class Clues {
+        int[][] types = new int[0][];
+        char[][] letters = new char[0][];
+        int[][] lettersInt = new int[0][];
+
+        /**
+         * @return The number of clues left once ordered, types[n], letters[n] and lettersInt[n] hold them
+         */
+        int order(ClueStats stats, int[] clueTypes, char[] clueLetters) {
+            int max = clueTypes.length;
+            if (types.length <= max) {
+                // Only grows the first time a thread sees that many clues
+                int[][] newTypes = new int[max + 1][];
+                char[][] newLetters = new char[max + 1][];
+                int[][] newLettersInt = new int[max + 1][];
+                for (int i = 0; i <= max; i++) {
+                    newTypes[i] = new int[i];
+                    newLetters[i] = new char[i];
+                    newLettersInt[i] = new int[i];
+                }
+                types = newTypes;
+                letters = newLetters;
+                lettersInt = newLettersInt;
+            }
+            int n = stats.order(clueTypes, clueLetters, types[max], letters[max]);
+            if (n < max) {
+                System.arraycopy(types[max], 0, types[n], 0, n);
+                System.arraycopy(letters[max], 0, letters[n], 0, n);
+            }
+            for (int i = 0; i < n; i++)
+                lettersInt[n][i] = letters[n][i] - 'a';
+            return n;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package dev.derivada;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reading and writing of the files computed once and memory mapped on later runs (BinaryDictionary, PatternMatrix,
+ * DecisionTree). Each one is big endian and starts with a header of its own: int magic | int version | the rest of
+ * the header, followed by the body
+ * <p>
+ * 1. write() writes to path + ".tmp" and then moves it over the path, so readers never see a half written file. The
+ * temporary file is deleted if the write or the move fails
+ * <p>
+ * 2. map() maps the whole file read only and checks the magic number and version, the caller reads the rest of the
+ * header and slices the body
+ */
+final class MappedFile {
+
+    private MappedFile() {
+    }
+
+    /**
+     * @param capacity: the header size, or the whole file size to build the body in the same buffer
+     * @return A buffer with the magic number and version already put
+     */
+    static ByteBuffer header(int capacity, int magic, int version) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.BIG_ENDIAN).putInt(magic).putInt(version);
+    }
+
+    /**
+     * @param buffers: written one after the other, each from its position to its limit
+     */
+    static void write(Path path, ByteBuffer... buffers) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (ByteBuffer buffer : buffers) {
+                    while (buffer.hasRemaining())
+                        channel.write(buffer);
+                }
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException err) {
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException suppressed) {
+                err.addSuppressed(suppressed);
+            }
+            throw err;
+        }
+    }
+
+    /**
+     * @param headerSize: the smallest valid file
+     * @return The file mapped read only and positioned after the version, or null if it is smaller than headerSize,
+     * too big to map or has another magic number or version
+     */
+    static ByteBuffer map(Path path, int magic, int version, int headerSize) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < headerSize || channel.size() > Integer.MAX_VALUE)
+                return null;
+            ByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.BIG_ENDIAN);
+            if (map.getInt() != magic || map.getInt() != version)
+                return null;
+            return map;
+        }
+    }
+}
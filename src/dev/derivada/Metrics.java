@@ -0,0 +1,241 @@
+package dev.derivada;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Hot path metrics of the solvers, off by default
+ * <p>
+ * ENABLED is read once from the wordle.metrics system property (main() sets it from the metrics config key before
+ * anything touches this class). It is static final, so with metrics off the JIT removes every "if (Metrics.ENABLED)"
+ * block and the calls below are empty, the solvers run the same code as without them. With metrics on:
+ * <p>
+ * 1. Latency histogram of every solver (see Histogram), and a QueryEvent per query for JFR recordings
+ * <p>
+ * 2. Evaluations and passes of every clue in the primes loops (solveOptimized and the ParallelSolver leaves, which then
+ * run an interpreted matcher), to see how well the clue ordering rejects words early
+ * <p>
+ * 3. Split depth and size of the ParallelSolver leaves
+ * <p>
+ * snapshot() reads all of it, its toString() is the text dump printed at exit
+ */
+public final class Metrics {
+    public static final boolean ENABLED = Boolean.getBoolean("wordle.metrics");
+
+    // Solvers, index of their latency histogram
+    public static final int TRIVIAL = 0, OPTIMIZED = 1, MULTITHREAD = 2, BITMASK = 3, CLUE_INDEX = 4, QUERY_CACHE = 5,
+            BATCH = 6, NATIVE = 7;
+    private static final String[] SOLVERS = {"trivial", "optimized", "multithread", "bitmask", "clue index", "query cache",
+            "batch", "native"};
+    // Clue counters by letter * (MAX_TYPE + 2) + type + 1, like ClueIndex slots but for any word size
+    private static final int MAX_TYPE = WordList.MAX_LENGTH;
+    private static final int MAX_DEPTH = 64;
+
+    private static final Histogram[] latencies = new Histogram[SOLVERS.length];
+    private static final AtomicLongArray evaluated = new AtomicLongArray(26 * (MAX_TYPE + 2));
+    private static final AtomicLongArray passed = new AtomicLongArray(26 * (MAX_TYPE + 2));
+    private static final AtomicLongArray depths = new AtomicLongArray(MAX_DEPTH);
+    private static final Histogram leafSizes = new Histogram();
+
+    static {
+        for (int s = 0; s < latencies.length; s++)
+            latencies[s] = new Histogram();
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * @return The start time of a query for query(), 0 if metrics are off
+     */
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    /**
+     * @param solver:  one of the solver constants
+     * @param start:   the value of start() when the query began
+     * @param clues:   number of clues of the query
+     * @param results: number of valid words found
+     */
+    public static void query(int solver, long start, int clues, int results) {
+        if (!ENABLED)
+            return;
+        long latency = System.nanoTime() - start;
+        latencies[solver].record(latency);
+        QueryEvent event = new QueryEvent();
+        if (event.shouldCommit()) {
+            event.solver = SOLVERS[solver];
+            event.clues = clues;
+            event.results = results;
+            event.latency = latency;
+            event.commit();
+        }
+    }
+
+    /**
+     * Adds the counters of a clue loop
+     *
+     * @param clueTypes:   see WordleTool class docs
+     * @param clueLetters: letters of the clues, parallel to clueTypes
+     * @param evaluations: times each clue was checked, parallel to clueTypes
+     * @param passes:      times each clue kept the word, parallel to clueTypes
+     */
+    public static void clues(int[] clueTypes, char[] clueLetters, long[] evaluations, long[] passes) {
+        if (!ENABLED)
+            return;
+        for (int j = 0; j < clueTypes.length; j++) {
+            int slot = slot(clueTypes[j], clueLetters[j]);
+            if (slot < 0)
+                continue;
+            evaluated.addAndGet(slot, evaluations[j]);
+            passed.addAndGet(slot, passes[j]);
+        }
+    }
+
+    private static int slot(int type, char letter) {
+        if (letter < 'a' || letter > 'z' || type < -1 || type > MAX_TYPE)
+            return -1;
+        return (letter - 'a') * (MAX_TYPE + 2) + type + 1;
+    }
+
+    /**
+     * @param depth: number of splits from the root task
+     * @param size:  words in the leaf
+     */
+    public static void leaf(int depth, int size) {
+        if (!ENABLED)
+            return;
+        depths.incrementAndGet(Math.min(depth, MAX_DEPTH - 1));
+        leafSizes.record(size);
+    }
+
+    public static void reset() {
+        for (Histogram latency : latencies)
+            latency.reset();
+        for (int s = 0; s < evaluated.length(); s++) {
+            evaluated.set(s, 0);
+            passed.set(s, 0);
+        }
+        for (int d = 0; d < MAX_DEPTH; d++)
+            depths.set(d, 0);
+        leafSizes.reset();
+    }
+
+    public static Snapshot snapshot() {
+        return new Snapshot();
+    }
+
+    /**
+     * Copy of the metrics at some point, the counters keep going on their own
+     */
+    public static final class Snapshot {
+        private final List<Latency> latencies = new ArrayList<>();
+        private final List<ClueCount> clues = new ArrayList<>();
+        private final long[] depths = new long[MAX_DEPTH];
+        private final long leaves, leafP50, leafMax;
+
+        private Snapshot() {
+            for (int s = 0; s < SOLVERS.length; s++) {
+                Histogram h = Metrics.latencies[s];
+                if (h.getCount() > 0)
+                    latencies.add(new Latency(SOLVERS[s], h.getCount(), h.percentile(0.5), h.percentile(0.99),
+                            h.percentile(0.999), h.getMax()));
+            }
+            for (int s = 0; s < evaluated.length(); s++) {
+                long e = evaluated.get(s);
+                if (e > 0)
+                    clues.add(new ClueCount(new Clue(s % (MAX_TYPE + 2) - 1, (char) ('a' + s / (MAX_TYPE + 2))), e,
+                            passed.get(s)));
+            }
+            for (int d = 0; d < MAX_DEPTH; d++)
+                depths[d] = Metrics.depths.get(d);
+            leaves = leafSizes.getCount();
+            leafP50 = leafSizes.percentile(0.5);
+            leafMax = leafSizes.getMax();
+        }
+
+        /**
+         * @return Latencies of the solvers that got at least one query
+         */
+        public List<Latency> getLatencies() {
+            return Collections.unmodifiableList(latencies);
+        }
+
+        /**
+         * @return Counters of the clues evaluated at least once
+         */
+        public List<ClueCount> getClues() {
+            return Collections.unmodifiableList(clues);
+        }
+
+        /**
+         * @return Number of ParallelSolver leaves at each split depth
+         */
+        public long[] getDepths() {
+            return depths.clone();
+        }
+
+        public long getLeaves() {
+            return leaves;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("Metrics\n");
+            sb.append("Latencies (us):     count       p50       p99      p999       max\n");
+            for (Latency l : latencies)
+                sb.append(String.format("  %-14s %10d %9.1f %9.1f %9.1f %9.1f%n", l.solver, l.count, l.p50 / 1e3,
+                        l.p99 / 1e3, l.p999 / 1e3, l.max / 1e3));
+            if (!clues.isEmpty()) {
+                sb.append("Clues: evaluated      passed   pass rate\n");
+                for (ClueCount c : clues)
+                    sb.append(String.format("  %-5s %12d %11d %10.1f%%%n", c.clue.toText(), c.evaluated, c.passed,
+                            100.0 * c.passed / c.evaluated));
+            }
+            if (leaves > 0) {
+                sb.append("Parallel leaves: ").append(leaves).append(", size p50 ").append(leafP50).append(", max ")
+                        .append(leafMax).append("\n  depths:");
+                for (int d = 0; d < MAX_DEPTH; d++) {
+                    if (depths[d] > 0)
+                        sb.append(' ').append(d).append('=').append(depths[d]);
+                }
+                sb.append('\n');
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Latency percentiles of a solver, in nanoseconds
+     */
+    public static final class Latency {
+        public final String solver;
+        public final long count, p50, p99, p999, max;
+
+        Latency(String solver, long count, long p50, long p99, long p999, long max) {
+            this.solver = solver;
+            this.count = count;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.p999 = p999;
+            this.max = max;
+        }
+    }
+
+    /**
+     * Times a clue was checked and kept the word
+     */
+    public static final class ClueCount {
+        public final Clue clue;
+        public final long evaluated, passed;
+
+        ClueCount(Clue clue, long evaluated, long passed) {
+            this.clue = clue;
+            this.evaluated = evaluated;
+            this.passed = passed;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package dev.derivada;
+
+/**
+ * One game of several boards at once (Quordle, Octordle...), every guess is played on all the boards still unsolved
+ * and shows a different pattern on each of them
+ * <p>
+ * Each board is a GameSession over the same solver and pattern matrix, so the dictionary index is shared and only the
+ * candidate arrays are per board. A board is solved in the round its answer is guessed and is left as it was from then
+ * on. The game is won when every board is solved within max rounds.
+ */
+public class MultiBoardSession {
+    private final GameSession[] boards;
+    private final int maxRounds;
+    private final int solvedPattern;
+    // solvedIn[b] = round board b was solved in, 0 if unsolved
+    private final int[] solvedIn;
+    private int round;
+
+    /**
+     * @param boards: number of boards, at most GuessRanker.MAX_BOARDS
+     */
+    public MultiBoardSession(BitmaskSolver solver, int wordSize, int boards, int maxRounds) {
+        if (boards <= 0 || boards > GuessRanker.MAX_BOARDS)
+            throw new IllegalArgumentException("Boards must be in [1, " + GuessRanker.MAX_BOARDS + "], got " + boards);
+        this.boards = new GameSession[boards];
+        for (int b = 0; b < boards; b++)
+            this.boards[b] = new GameSession(solver, maxRounds);
+        this.maxRounds = maxRounds;
+        this.solvedPattern = Feedback.solved(wordSize);
+        this.solvedIn = new int[boards];
+    }
+
+    /**
+     * Plays a guess on every unsolved board
+     *
+     * @param guess:    dictionary index of the guessed word
+     * @param patterns: feedback of the guess on each board (see Feedback), the ones of solved boards are ignored
+     * @param matrix:   pattern matrix of the same dictionary
+     * @return The number of boards still unsolved
+     */
+    public int play(int guess, int[] patterns, PatternMatrix matrix) {
+        if (patterns.length != boards.length)
+            throw new IllegalArgumentException("Expected " + boards.length + " patterns, got " + patterns.length);
+        if (round == maxRounds)
+            throw new IllegalStateException("No rounds left, the game is limited to " + maxRounds + " rounds");
+        round++;
+        for (int b = 0; b < boards.length; b++) {
+            if (solvedIn[b] != 0)
+                continue;
+            boards[b].play(guess, patterns[b], matrix);
+            if (patterns[b] == solvedPattern)
+                solvedIn[b] = round;
+        }
+        return getUnsolvedCount();
+    }
+
+    /**
+     * Goes back to the boards before the last round
+     *
+     * @return false if no round has been played
+     */
+    public boolean undo() {
+        if (round == 0)
+            return false;
+        for (int b = 0; b < boards.length; b++) {
+            if (solvedIn[b] == round)
+                solvedIn[b] = 0;
+            if (solvedIn[b] == 0)
+                boards[b].undo();
+        }
+        round--;
+        return true;
+    }
+
+    public int getBoardCount() {
+        return boards.length;
+    }
+
+    /**
+     * @return The session of the board, only its reads are meant to be used
+     */
+    public GameSession getBoard(int board) {
+        return boards[board];
+    }
+
+    public boolean isSolved(int board) {
+        return solvedIn[board] != 0;
+    }
+
+    /**
+     * @return The round the board was solved in, 0 if unsolved
+     */
+    public int getSolvedIn(int board) {
+        return solvedIn[board];
+    }
+
+    public int getUnsolvedCount() {
+        int n = 0;
+        for (int s : solvedIn)
+            n += s == 0 ? 1 : 0;
+        return n;
+    }
+
+    public boolean isWon() {
+        return getUnsolvedCount() == 0;
+    }
+
+    public int getRound() {
+        return round;
+    }
+
+    public int getMaxRounds() {
+        return maxRounds;
+    }
+
+    public boolean hasRoundsLeft() {
+        return round < maxRounds;
+    }
+}
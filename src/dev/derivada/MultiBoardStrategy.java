@@ -0,0 +1,56 @@
+package dev.derivada;
+
+/**
+ * Chooses the next guess of a multi-board game (see MultiBoardSession), shared by all the games of a simulation
+ * <p>
+ * 1. A board with a single candidate left is finished first: the guess solves it for sure and still tells something
+ * about the other boards.
+ * <p>
+ * 2. Otherwise the guess with the highest sum of expected information over the unsolved boards (see
+ * GuessRanker.rankBoards()), ties go to the words that can be an answer. The first guess is the same for every game,
+ * so it is only computed once.
+ */
+public class MultiBoardStrategy {
+    private final GuessRanker ranker;
+    private final int[] guesses;
+    private volatile int firstGuess = -1;
+
+    /**
+     * @param guesses: dictionary indexes of the allowed guesses
+     */
+    public MultiBoardStrategy(GuessRanker ranker, int[] guesses) {
+        this.ranker = ranker;
+        this.guesses = guesses;
+    }
+
+    /**
+     * @param session: the game, with at least one board unsolved
+     * @return The dictionary index of the next guess
+     */
+    public int nextGuess(MultiBoardSession session) {
+        if (session.getRound() == 0 && firstGuess >= 0)
+            return firstGuess;
+
+        int unsolved = session.getUnsolvedCount();
+        if (unsolved == 0)
+            throw new IllegalStateException("Every board is solved");
+        int[][] candidates = new int[unsolved][];
+        int[] counts = new int[unsolved];
+        int n = 0;
+        for (int b = 0; b < session.getBoardCount(); b++) {
+            if (session.isSolved(b))
+                continue;
+            GameSession board = session.getBoard(b);
+            if (board.getCandidateCount() == 1)
+                return board.getCandidate(0);
+            candidates[n] = new int[board.getCandidateCount()];
+            counts[n] = board.getCandidates(candidates[n]);
+            n++;
+        }
+
+        int guess = ranker.rankBoards(candidates, counts, guesses, guesses.length, 1)[0];
+        if (session.getRound() == 0)
+            firstGuess = guess;
+        return guess;
+    }
+}
@@ -1,98 +1,389 @@
 package dev.derivada;
 
-import java.util.List;
+import java.util.Arrays;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.RecursiveAction;
 
-public class ParallelSolver extends RecursiveAction {
-    static final int THRESHOLD = 1024;
-    private static final int[] primes = {2, 3, 5, 7, 11, 13, 17, 19, 23, 29, 31, 37, 41, 43, 47, 53, 59, 61, 67, 71, 73,
-            79, 83, 89, 97, 101};
-
-    private static String[] words;
-    private static int[] wordValues;
-    private static boolean setup = false;
-
-    private static List<String> solution;
-    private static int[] clueTypes;
-    private static char[] clueLetters;
-    private static int[] clueLettersInt;
-    private static int maxLength;
-
-    private final int startIndex, endIndex;
-
-    ParallelSolver(int startIndex, int endIndex) {
-        if (startIndex < endIndex) {
-            this.startIndex = startIndex;
-            this.endIndex = endIndex;
-        } else {
-            this.endIndex = startIndex;
-            this.startIndex = endIndex;
+/**
+ * Fork-join version of the primes solver
+ * <p>
+ * Holds an immutable snapshot of the dictionary, all the query state lives in a Query object, so the same solver can be
+ * used by many threads at the same time. The dictionary is split in leaves of threshold words, each leaf writes its
+ * matches to its own range of the caller's buffer (the range of its words) and the ranges are then packed in leaf
+ * order, so the result keeps the dictionary order and no buffer is allocated per query. Each calling thread keeps one
+ * Query, with its per-leaf counters and its tree of tasks, and reuses it for every solve(), so a query allocates
+ * nothing once the matcher of its clues is compiled.
+ * The leaves run the compiled matcher of the clues (see ClueCompiler) instead of interpreting them, or the counting
+ * one when metrics are enabled (see Metrics).
+ * <p>
+ * With a maxLength only the first matches in dictionary order are needed:
+ * <p>
+ * 1. Finished leaves are added to a ready prefix (leaves 0 to n, all done). Once the prefix holds maxLength matches,
+ * the leaves after it are cancelled: the ones not started return right away and the running ones stop at their next
+ * block of LIMIT_BLOCK words
+ * <p>
+ * 2. A leaf also stops once it has maxLength matches itself, the ones after them can't make it to the result
+ * <p>
+ * So a "first 20 words" query only scans the start of the dictionary (a few blocks per worker) instead of all of it.
+ * publish() streams the ready prefix as it grows, the first words arrive before the scan ends.
+ */
+public class ParallelSolver {
+    static final int MIN_THRESHOLD = 256;
+    // Leaves per worker thread, a few more than one so that idle workers can steal
+    static final int LEAVES_PER_WORKER = 4;
+    // Words matched between cancellation checks when there is a maxLength
+    static final int LIMIT_BLOCK = 1024;
+
+    private final WordTable words;
+    private final long[] wordValues;
+    private final ForkJoinPool pool;
+    private final int threshold;
+    private final int leaves;
+    // Query state of solve(), one per calling thread
+    private final ThreadLocal<Query> queries;
+
+    /**
+     * @param wordValues: primes values of the words, copied
+     */
+    public ParallelSolver(WordTable words, long[] wordValues, ForkJoinPool pool) {
+        assert words.size() == wordValues.length;
+        this.words = words;
+        this.wordValues = wordValues.clone();
+        this.pool = pool;
+        this.threshold = Math.max(MIN_THRESHOLD, words.size() / (pool.getParallelism() * LEAVES_PER_WORKER) + 1);
+        this.leaves = Math.max(1, (words.size() + threshold - 1) / threshold);
+        this.queries = ThreadLocal.withInitial(() -> new Query(leaves));
+    }
+
+    /**
+     * @param clueTypes:      see WordleTool class docs
+     * @param clueLetters:    letters of the clues, parallel to clueTypes
+     * @param clueLettersInt: indexes of clueLetters in the primes array
+     * @param result:         output buffer for the dictionary indexes of the valid words, at least as big as the
+     *                        dictionary (the leaves use all of it before packing)
+     * @return The number of valid words written to result, in dictionary order
+     */
+    public int solve(int[] clueTypes, char[] clueLetters, int[] clueLettersInt, int[] result) {
+        return solve(clueTypes, clueLetters, clueLettersInt, 0, result);
+    }
+
+    /**
+     * Same as solve(int[], char[], int[], int[]) but stops once the first maxLength valid words are found, see class docs
+     *
+     * @param maxLength: the maximum number of words fetched, unlimited for values <= 0
+     */
+    public int solve(int[] clueTypes, char[] clueLetters, int[] clueLettersInt, int maxLength, int[] result) {
+        if (result.length < words.size())
+            throw new IllegalArgumentException("Result buffer smaller than the dictionary");
+        long start = Metrics.start();
+        Query query = queries.get();
+        // A worker thread can start another solve() while it waits for this one, that one gets its own query
+        if (query.busy)
+            query = new Query(leaves);
+        query.reset(clueTypes, clueLetters, clueLettersInt, result, maxLength);
+        query.busy = true;
+        int n = 0;
+        try {
+            pool.invoke(query.root);
+
+            // Leaf ranges are in order and each one starts after the matches before it, so moving them down is safe
+            for (int leaf = 0; leaf < query.readyLeaves && n < query.limit; leaf++) {
+                int count = Math.min(query.counts[leaf], query.limit - n);
+                System.arraycopy(result, leaf * threshold, result, n, count);
+                n += count;
+            }
+        } finally {
+            query.busy = false;
         }
+        Metrics.query(Metrics.MULTITHREAD, start, clueTypes.length, n);
+        return n;
+    }
+
+    /**
+     * @param maxLength: the maximum length fetched, unlimited for values <= 0
+     * @return A string array with all the valid words, in dictionary order
+     */
+    public String[] solve(int[] clueTypes, char[] clueLetters, int[] clueLettersInt, int maxLength) {
+        int[] result = new int[words.size()];
+        int n = solve(clueTypes, clueLetters, clueLettersInt, maxLength, result);
+        return words.get(result, n);
     }
 
-    public static void setup(String[] words, int[] wordValues, List<String> solution,
-                             int[] clueTypes, char[] clueLetters, int[] clueLettersInt, int maxLength) {
-        ParallelSolver.words = words;
-        ParallelSolver.wordValues = wordValues;
-        ParallelSolver.setup = true;
-        ParallelSolver.solution = solution;
-        ParallelSolver.clueTypes = clueTypes;
-        ParallelSolver.clueLetters = clueLetters;
-        ParallelSolver.clueLettersInt = clueLettersInt;
-        ParallelSolver.maxLength = maxLength;
+    /**
+     * Every subscription runs the query on the pool and gets the valid words in dictionary order, each one as soon as
+     * the leaves before it are done. Demand is respected, the words not requested yet wait in the query buffer.
+     * Cancelling the subscription cancels the leaves left. The subscriber is called one signal at a time, from the
+     * requesting thread or a pool worker, and never with the query locked, so a slow subscriber doesn't hold back the
+     * leaves that finish meanwhile
+     *
+     * @param maxLength: the maximum number of words published, unlimited for values <= 0
+     */
+    public Flow.Publisher<String> publish(int[] clueTypes, char[] clueLetters, int[] clueLettersInt, int maxLength) {
+        return subscriber -> {
+            Query query = new Query(leaves);
+            query.reset(clueTypes, clueLetters, clueLettersInt, new int[words.size()], maxLength);
+            Publication publication = new Publication(subscriber, query);
+            query.publication = publication;
+            subscriber.onSubscribe(publication);
+            pool.execute(() -> {
+                try {
+                    query.root.invoke();
+                } catch (RuntimeException err) {
+                    publication.fail(err);
+                }
+            });
+        };
     }
 
-    public static boolean isSetup() {
-        return ParallelSolver.setup;
+    public int getThreshold() {
+        return threshold;
     }
 
-    @Override
-    protected void compute() {
-        //System.out.println("Start index = " + startIndex + " Half index = " + halfIndex + " End Index = " + endIndex + " Length = " + (endIndex - startIndex));
-
-        if ((endIndex - startIndex) < THRESHOLD) {
-            computeLeaf();
-        } else {
-            int halfIndex = startIndex + (endIndex - startIndex) / 2;
-            ParallelSolver left = new ParallelSolver(startIndex, halfIndex);
-            ParallelSolver right = new ParallelSolver(halfIndex, endIndex);
-            left.invoke();
-            right.invoke();
-            left.join();
-            right.join();
+    /**
+     * State of one query, reset() before every query that reuses it
+     */
+    private final class Query {
+        ClueCompiler.Matcher matcher;
+        // Matches of every leaf (dictionary indexes), from the first index of the leaf on, and how many each has
+        int[] result;
+        final int[] counts;
+        int limit;
+        // Last leaf still needed, lowered once the ready prefix has limit matches (or to -1 when cancelled)
+        volatile int cutoff;
+        // Leaves 0 to readyLeaves - 1 are done and hold readyCount matches, guarded by the query lock
+        int readyLeaves;
+        long readyCount;
+        final boolean[] done;
+        // Tasks over all the leaves, built once and reinitialized by reset()
+        final Task root;
+        // Set while solve() runs it, only read by the thread the query belongs to
+        boolean busy;
+        // null unless the query was started by publish()
+        Publication publication;
+
+        Query(int leaves) {
+            this.counts = new int[leaves];
+            this.done = new boolean[leaves];
+            this.root = new Task(this, 0, leaves, 0);
+        }
+
+        void reset(int[] clueTypes, char[] clueLetters, int[] clueLettersInt, int[] result, int maxLength) {
+            assert clueTypes.length == clueLetters.length && clueLetters.length == clueLettersInt.length;
+            this.matcher = Metrics.ENABLED ? ClueCompiler.instrument(clueTypes, clueLetters, clueLettersInt)
+                    : ClueCompiler.compile(clueTypes, clueLetters, clueLettersInt);
+            this.result = result;
+            this.limit = maxLength <= 0 ? Integer.MAX_VALUE : maxLength;
+            this.cutoff = done.length - 1;
+            this.readyLeaves = 0;
+            this.readyCount = 0;
+            Arrays.fill(done, false);
+            root.reset();
+        }
+
+        void leafDone(int leaf, int count) {
+            synchronized (this) {
+                counts[leaf] = count;
+                done[leaf] = true;
+                while (readyLeaves < done.length && done[readyLeaves])
+                    readyCount += counts[readyLeaves++];
+                if (readyCount >= limit && cutoff > readyLeaves - 1)
+                    cutoff = readyLeaves - 1;
+            }
+            if (publication != null)
+                publication.drain();
         }
     }
 
-    private void computeLeaf() {
-        // The main algorithm
-        String word;
-        int value, p;
-        WORD:
-        for (int i = startIndex; i < endIndex; i++) { // from start index to end index!
-            word = words[i];
-            for (int j = 0; j < clueLetters.length; j++) {
-                value = wordValues[i];
-                p = primes[clueLettersInt[j]];
-                switch (clueTypes[j]) {
-                    case -1:
-                        if ((value % p == 0))
-                            continue WORD;
-                        break;
-                    case 0:
-                        if ((value % p != 0))
-                            continue WORD;
-                        break;
-                    default:
-                        if ((value % p != 0) && (word.indexOf(clueLetters[j]) != clueTypes[j]))
-                            continue WORD;
+    /**
+     * Subscription of publish(), hands out the ready prefix of the query. Its state is guarded by the query lock, the
+     * subscriber is only called by the thread draining, after releasing it
+     */
+    private final class Publication implements Flow.Subscription {
+        private final Flow.Subscriber<? super String> subscriber;
+        private final Query query;
+        private long demand;
+        // Next match to publish
+        private int leaf, offset, published;
+        // Set by the thread publishing, the others only update the state and leave the publishing to it
+        private boolean draining;
+        // Read without the lock by the thread publishing, to stop in the middle of a run of words
+        private volatile boolean finished;
+        // Sent by the thread publishing instead of the words left
+        private Throwable error;
+
+        Publication(Flow.Subscriber<? super String> subscriber, Query query) {
+            this.subscriber = subscriber;
+            this.query = query;
+        }
+
+        @Override
+        public void request(long n) {
+            synchronized (query) {
+                if (finished)
+                    return;
+                if (n <= 0) {
+                    query.cutoff = -1;
+                    error = new IllegalArgumentException("Requested " + n + " words, must be positive");
+                } else {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (query) {
+                finished = true;
+                query.cutoff = -1;
+            }
+        }
+
+        void fail(Throwable err) {
+            synchronized (query) {
+                if (finished || error != null)
+                    return;
+                query.cutoff = -1;
+                error = err;
+            }
+            drain();
+        }
+
+        /**
+         * Publishes the ready words while there is demand, completes once the needed leaves are all published. Each
+         * round takes a run of ready words of one leaf with the query locked and publishes them after releasing it
+         * (the matches of a done leaf don't change any more)
+         */
+        void drain() {
+            synchronized (query) {
+                // onNext() can call request(), and leaves can finish meanwhile, the loop below sees both
+                if (draining)
+                    return;
+                draining = true;
+            }
+            while (true) {
+                // The run of words to publish, or the terminal signal
+                int from = 0, count = 0;
+                boolean complete = false;
+                Throwable failure = null;
+                synchronized (query) {
+                    while (true) {
+                        if (finished) {
+                            draining = false;
+                            return;
+                        }
+                        if (error != null) {
+                            failure = error;
+                            finished = true;
+                            break;
+                        }
+                        if (published >= query.limit || leaf > query.cutoff) {
+                            complete = true;
+                            finished = true;
+                            break;
+                        }
+                        if (leaf >= query.readyLeaves || demand == 0) {
+                            draining = false;
+                            return;
+                        }
+                        if (offset >= query.counts[leaf]) {
+                            leaf++;
+                            offset = 0;
+                            continue;
+                        }
+                        count = (int) Math.min(Math.min(demand, query.counts[leaf] - offset), query.limit - published);
+                        from = leaf * threshold + offset;
+                        offset += count;
+                        published += count;
+                        demand -= count;
                         break;
+                    }
+                }
+                // Finished, the terminal signal is the last one, draining stays set so nothing else is sent
+                if (failure != null) {
+                    subscriber.onError(failure);
+                    return;
+                }
+                if (complete) {
+                    subscriber.onComplete();
+                    return;
+                }
+                for (int i = from; i < from + count && !finished; i++) {
+                    try {
+                        subscriber.onNext(words.get(query.result[i]));
+                    } catch (RuntimeException err) {
+                        // A failing subscriber counts as cancelled
+                        cancel();
+                    }
                 }
             }
-            solution.add(word);
         }
     }
 
-    public List<String> getSolution() {
-        return solution;
+    private final class Task extends RecursiveAction {
+        private final Query query;
+        private final int startLeaf, endLeaf;
+        // Splits from the root task
+        private final int depth;
+        // Halves of the leaves, null for a single leaf
+        private final Task left, right;
+
+        Task(Query query, int startLeaf, int endLeaf, int depth) {
+            this.query = query;
+            this.startLeaf = startLeaf;
+            this.endLeaf = endLeaf;
+            this.depth = depth;
+            if (endLeaf - startLeaf == 1) {
+                left = right = null;
+            } else {
+                int halfLeaf = startLeaf + (endLeaf - startLeaf) / 2;
+                left = new Task(query, startLeaf, halfLeaf, depth + 1);
+                right = new Task(query, halfLeaf, endLeaf, depth + 1);
+            }
+        }
+
+        /**
+         * Makes the finished tasks runnable again, the tree is only reused once the previous query is over
+         */
+        void reset() {
+            reinitialize();
+            if (left != null) {
+                left.reset();
+                right.reset();
+            }
+        }
+
+        @Override
+        protected void compute() {
+            // Cancelled, the leaves before these ones already have enough matches
+            if (startLeaf > query.cutoff)
+                return;
+            if (left == null)
+                computeLeaf(startLeaf);
+            else
+                invokeAll(left, right);
+        }
+
+        private void computeLeaf(int leaf) {
+            int startIndex = leaf * threshold;
+            int endIndex = Math.min(startIndex + threshold, words.size());
+            int n;
+            if (query.limit == Integer.MAX_VALUE) {
+                n = query.matcher.match(words, wordValues, startIndex, endIndex, query.result);
+            } else {
+                // Block by block, moving each block's matches after the ones before
+                n = 0;
+                for (int from = startIndex; from < endIndex && n < query.limit; from += LIMIT_BLOCK) {
+                    if (leaf > query.cutoff)
+                        return;
+                    int found = query.matcher.match(words, wordValues, from, Math.min(from + LIMIT_BLOCK, endIndex), query.result);
+                    System.arraycopy(query.result, from, query.result, startIndex + n, found);
+                    n += found;
+                }
+            }
+            Metrics.leaf(depth, endIndex - startIndex);
+            query.leafDone(leaf, n);
+        }
     }
 }
@@ -0,0 +1,112 @@
+package dev.derivada;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Feedback pattern of every (guess, answer) pair of the dictionary, one unsigned byte each (see Feedback)
+ * <p>
+ * Computing it takes a while (dictionary size squared patterns), so it can be written to a file and memory mapped on
+ * later runs. File format (big endian):
+ * <p>
+ * magic "WPMX" | int version | int word size | int number of words | int dictionary hash | patterns, row = guess
+ */
+public class PatternMatrix {
+    static final int MAGIC = 0x57504D58; // "WPMX"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 5 * Integer.BYTES;
+
+    private final int size;
+    private final int wordSize;
+    // Only the patterns, the header is skipped
+    private final ByteBuffer patterns;
+
+    private PatternMatrix(int size, int wordSize, ByteBuffer patterns) {
+        this.size = size;
+        this.wordSize = wordSize;
+        this.patterns = patterns;
+    }
+
+    /**
+     * Computes the matrix for the dictionary, one row (guess) per task in the common fork-join pool
+     */
+    public static PatternMatrix compute(String[] words, int wordSize) {
+        checkSize(words.length, wordSize);
+        int n = words.length;
+        byte[] patterns = new byte[n * n];
+        IntStream.range(0, n).parallel().forEach(guess -> {
+            String g = words[guess];
+            int row = guess * n;
+            for (int answer = 0; answer < n; answer++)
+                patterns[row + answer] = (byte) Feedback.pattern(g, words[answer]);
+        });
+        return new PatternMatrix(n, wordSize, ByteBuffer.wrap(patterns));
+    }
+
+    /**
+     * Memory maps a matrix written by write()
+     *
+     * @return The matrix, or null if the file was written for another dictionary or version
+     */
+    public static PatternMatrix load(Path path, String[] words, int wordSize) throws IOException {
+        checkSize(words.length, wordSize);
+        ByteBuffer map = MappedFile.map(path, MAGIC, VERSION, HEADER_SIZE);
+        if (map == null || map.capacity() != HEADER_SIZE + (long) words.length * words.length
+                || map.getInt() != wordSize || map.getInt() != words.length || map.getInt() != Arrays.hashCode(words))
+            return null;
+        return new PatternMatrix(words.length, wordSize, map.slice());
+    }
+
+    /**
+     * Writes the matrix atomically, see MappedFile.write()
+     */
+    public void write(Path path, String[] words) throws IOException {
+        assert words.length == size;
+        ByteBuffer header = MappedFile.header(HEADER_SIZE, MAGIC, VERSION);
+        header.putInt(wordSize).putInt(size).putInt(Arrays.hashCode(words)).flip();
+        ByteBuffer body = patterns.duplicate();
+        body.clear();
+        MappedFile.write(path, header, body);
+    }
+
+    /**
+     * Loads the matrix from the path if it matches the dictionary, otherwise computes it and writes it there
+     */
+    public static PatternMatrix loadOrCompute(Path path, String[] words, int wordSize) throws IOException {
+        if (Files.exists(path)) {
+            PatternMatrix matrix = load(path, words, wordSize);
+            if (matrix != null)
+                return matrix;
+            System.out.println("Pattern matrix at " + path + " doesn't match the dictionary, computing it again");
+        }
+        PatternMatrix matrix = compute(words, wordSize);
+        matrix.write(path, words);
+        return matrix;
+    }
+
+    private static void checkSize(int words, int wordSize) {
+        if (wordSize > Feedback.MAX_BYTE_WORD_SIZE)
+            throw new IllegalArgumentException("Patterns of " + wordSize + " letter words don't fit in a byte");
+        if ((long) words * words > Integer.MAX_VALUE - HEADER_SIZE)
+            throw new IllegalArgumentException("Dictionary too big for a pattern matrix (" + words + " words)");
+    }
+
+    /**
+     * @return The pattern of the guess against the answer, both dictionary indexes
+     */
+    public int get(int guess, int answer) {
+        return patterns.get(guess * size + answer) & 0xFF;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getWordSize() {
+        return wordSize;
+    }
+}
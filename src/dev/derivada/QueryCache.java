@@ -0,0 +1,162 @@
+package dev.derivada;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded cache of query results on top of the bitmask solver
+ * <p>
+ * Results are kept as arrays of dictionary indexes keyed by their ClueSet, evicting the least recently used ones once
+ * there are more than maxEntries results or more than maxWords indexes in total. On a miss the cached results of
+ * subsets of the query are still useful: the query is solved by filtering the smallest of them with the missing clues
+ * only (see BitmaskSolver.filter()), instead of checking the whole dictionary. Games share their first rounds, so most
+ * queries have a cached subset.
+ * <p>
+ * The lock is only held to look up the query and copy the entries, the subsets are searched and the query solved
+ * outside of it, so concurrent misses don't wait on each other's scans.
+ */
+public class QueryCache {
+    private final BitmaskSolver solver;
+    private final int maxEntries;
+    private final long maxWords;
+    // Access order, the first entry is the least recently used
+    private final LinkedHashMap<ClueSet, int[]> results = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedWords;
+    private long hits, subsetHits, misses;
+
+    public QueryCache(BitmaskSolver solver, int maxEntries, long maxWords) {
+        if (maxEntries <= 0 || maxWords <= 0)
+            throw new IllegalArgumentException("Cache limits must be positive, got " + maxEntries + " entries and " + maxWords + " words");
+        this.solver = solver;
+        this.maxEntries = maxEntries;
+        this.maxWords = maxWords;
+    }
+
+    /**
+     * @param clues: see WordleTool class docs
+     * @return The dictionary indexes of the valid words, in dictionary order. Shared with the cache, must not be modified
+     */
+    public int[] solve(List<Clue> clues) {
+        long start = Metrics.start();
+        for (Clue c : clues) {
+            // Nothing matches a position after the end of the word, not worth a key
+            if (c.getType() > solver.getWordSize())
+                return new int[0];
+        }
+        ClueSet key = ClueSet.of(clues, solver.getWordSize());
+        ClueSet[] keys;
+        int[][] values;
+        synchronized (this) {
+            int[] cached = results.get(key);
+            if (cached != null) {
+                hits++;
+                Metrics.query(Metrics.QUERY_CACHE, start, clues.size(), cached.length);
+                return cached;
+            }
+            // Only copies the entries, the subsets are searched without holding the lock
+            keys = new ClueSet[results.size()];
+            values = new int[keys.length][];
+            int i = 0;
+            for (Map.Entry<ClueSet, int[]> e : results.entrySet()) {
+                keys[i] = e.getKey();
+                values[i++] = e.getValue();
+            }
+        }
+        ClueSet base = null;
+        int[] baseResult = null;
+        for (int i = 0; i < keys.length; i++) {
+            if ((baseResult == null || values[i].length < baseResult.length) && key.containsAll(keys[i])) {
+                base = keys[i];
+                baseResult = values[i];
+            }
+        }
+        synchronized (this) {
+            if (base != null) {
+                // Marks it as recently used, unless another thread evicted it meanwhile
+                results.get(base);
+                subsetHits++;
+            } else {
+                misses++;
+            }
+        }
+
+        int[] result;
+        int n;
+        if (base == null) {
+            result = new int[solver.size()];
+            n = solver.solve(Clue.types(clues), Clue.letters(clues), result);
+        } else {
+            List<Clue> missing = key.minus(base).clues();
+            result = new int[baseResult.length];
+            n = solver.filter(Clue.types(missing), Clue.letters(missing), baseResult, baseResult.length, result);
+        }
+        if (n < result.length) {
+            int[] exact = new int[n];
+            System.arraycopy(result, 0, exact, 0, n);
+            result = exact;
+        }
+        put(key, result);
+        Metrics.query(Metrics.QUERY_CACHE, start, clues.size(), result.length);
+        return result;
+    }
+
+    /**
+     * @param maxLength: the maximum length fetched, unlimited for values <= 0
+     * @return A string array with all the valid words
+     */
+    public String[] solve(List<Clue> clues, int maxLength) {
+        if (maxLength <= 0) {
+            maxLength = Integer.MAX_VALUE;
+        }
+        int[] result = solve(clues);
+        String[] solution = new String[Math.min(result.length, maxLength)];
+        for (int i = 0; i < solution.length; i++)
+            solution[i] = solver.getWord(result[i]);
+        return solution;
+    }
+
+    private synchronized void put(ClueSet key, int[] result) {
+        // Results bigger than the whole cache aren't kept
+        if (result.length > maxWords)
+            return;
+        int[] old = results.put(key, result);
+        if (old != null)
+            cachedWords -= old.length;
+        cachedWords += result.length;
+        Iterator<Map.Entry<ClueSet, int[]>> eldest = results.entrySet().iterator();
+        while (results.size() > maxEntries || cachedWords > maxWords) {
+            cachedWords -= eldest.next().getValue().length;
+            eldest.remove();
+        }
+    }
+
+    public synchronized void clear() {
+        results.clear();
+        cachedWords = 0;
+    }
+
+    public synchronized int size() {
+        return results.size();
+    }
+
+    public synchronized long getCachedWords() {
+        return cachedWords;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return The misses solved from the result of a cached subset
+     */
+    public synchronized long getSubsetHits() {
+        return subsetHits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+}
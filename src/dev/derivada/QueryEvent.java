@@ -0,0 +1,29 @@
+package dev.derivada;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event of a solved query, only emitted when the metrics are enabled (see Metrics)
+ */
+@Name("dev.derivada.Query")
+@Label("Query")
+@Category("WordleTool")
+@Description("A clue list solved by one of the solvers")
+public class QueryEvent extends jdk.jfr.Event {
+    @Label("Solver")
+    String solver;
+
+    @Label("Clues")
+    int clues;
+
+    @Label("Results")
+    int results;
+
+    @Label("Latency")
+    @Timespan(Timespan.NANOSECONDS)
+    long latency;
+}
@@ -0,0 +1,41 @@
+package dev.derivada;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event of a setup phase (reading, encoding, indexing, loading or writing the binary dictionary, building the
+ * word trie), the event duration is the phase duration
+ */
+@Name("dev.derivada.Setup")
+@Label("Setup phase")
+@Category("WordleTool")
+@Description("A phase of WordleTool.setup() for one word size")
+public class SetupEvent extends jdk.jfr.Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("Word size")
+    int wordSize;
+
+    @Label("Words")
+    int words;
+
+    /**
+     * @return A started event, commit() it when the phase ends
+     */
+    static SetupEvent begin(String phase, int wordSize) {
+        SetupEvent event = new SetupEvent();
+        event.phase = phase;
+        event.wordSize = wordSize;
+        event.begin();
+        return event;
+    }
+
+    void end(int words) {
+        this.words = words;
+        commit();
+    }
+}
@@ -0,0 +1,88 @@
+package dev.derivada;
+
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Path;
+
+/**
+ * A solver of clue lists over a fixed dictionary, so the Java solvers and the C one (see NativeBackend) can be swapped
+ * and compared
+ * <p>
+ * Results are dictionary indexes in dictionary order. Every backend gives the same words for the same clues, positional
+ * clues are checked at their exact position (like BitmaskSolver).
+ */
+public interface SolverBackend extends AutoCloseable {
+
+    /**
+     * The C solver through the foreign function API, see NativeBackend. It lives in the native module (built on JDK 21
+     * or newer), so it is looked up by reflection like SolverServer looks up virtual threads
+     *
+     * @param library: path of libwordle.so
+     * @param threads: 1 to solve on the calling thread, more to split every query in that many native threads
+     * @throws UnsupportedOperationException if the native module isn't on the class path or can't run on this JDK
+     * @throws IllegalArgumentException      if the library can't be loaded or the words are too long for it
+     */
+    static SolverBackend ofNative(Path library, WordTable words, int threads) {
+        try {
+            return (SolverBackend) Class.forName("dev.derivada.NativeBackend")
+                    .getConstructor(Path.class, WordTable.class, int.class).newInstance(library, words, threads);
+        } catch (InvocationTargetException err) {
+            if (err.getCause() instanceof RuntimeException)
+                throw (RuntimeException) err.getCause();
+            throw new IllegalStateException(err.getCause());
+        } catch (ClassNotFoundException err) {
+            throw new UnsupportedOperationException("The native module (native/target/classes) isn't on the class path");
+        } catch (ReflectiveOperationException err) {
+            throw new IllegalStateException(err);
+        } catch (UnsupportedClassVersionError err) {
+            // Built for a newer JDK, or for 21 and run without --enable-preview
+            throw new UnsupportedOperationException("The native module can't run on JDK "
+                    + System.getProperty("java.version") + ": " + err.getMessage());
+        }
+    }
+
+    String getName();
+
+    /**
+     * @return The number of words of the dictionary
+     */
+    int size();
+
+    /**
+     * @param clueTypes:   see WordleTool class docs
+     * @param clueLetters: letters of the clues, parallel to clueTypes
+     * @param maxLength:   the maximum number of words fetched, unlimited for values <= 0
+     * @param result:      output buffer for the dictionary indexes of the valid words, at least size() long
+     * @return The number of valid words written to result
+     */
+    int solve(int[] clueTypes, char[] clueLetters, int maxLength, int[] result);
+
+    /**
+     * Solves many clue lists in one call, query q writes its words from result[q * getStride(maxLength)] on
+     *
+     * @param result: output buffer, at least clueTypes.length * getStride(maxLength) long
+     * @param counts: output, the number of valid words of each query
+     */
+    default void solveBatch(int[][] clueTypes, char[][] clueLetters, int maxLength, int[] result, int[] counts) {
+        assert clueTypes.length == clueLetters.length;
+        int stride = getStride(maxLength);
+        int[] buffer = new int[size()];
+        for (int q = 0; q < clueTypes.length; q++) {
+            counts[q] = solve(clueTypes[q], clueLetters[q], maxLength, buffer);
+            System.arraycopy(buffer, 0, result, q * stride, counts[q]);
+        }
+    }
+
+    /**
+     * @return The room taken by each query in the result of solveBatch()
+     */
+    default int getStride(int maxLength) {
+        return maxLength <= 0 ? size() : Math.min(maxLength, size());
+    }
+
+    /**
+     * Frees what the backend holds outside the heap, it can't be used afterwards (nor while closing)
+     */
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,335 @@
+package dev.derivada;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Local HTTP service, so the dictionary and the indexes are loaded once per process instead of once per query
+ * <p>
+ * Listens on localhost only, every answer is plain text (UTF-8). Clues are written as in Clue.parse() and separated by
+ * commas, ex: a-1,e-1,i0,s0
+ * <p>
+ * 1. GET /solve?clues=...&max=n: the valid words, one per line (max <= 0 or missing = all of them)
+ * <p>
+ * 2. GET /rank?clues=...&k=n: the best k guesses (default 10) and their expected information, "word bits" per line.
+ * In expert mode only the legal guesses are ranked (see HardMode)
+ * <p>
+ * 3. POST /batch?max=n: one clue list per line in the body, one line per clue list in the answer with the valid words
+ * separated by spaces, at most max per line. Solved together in one pass over the dictionary (see BatchSolver). A
+ * batch whose answer would have more than MAX_BATCH_WORDS words in total is a 400, so a small body can't build a huge
+ * answer
+ * <p>
+ * 4. GET /metrics: the text dump of Metrics.snapshot(), 503 if metrics are off
+ * <p>
+ * 5. GET /next?history=...: the next guess of the decision tree (see DecisionTree) after the given rounds, written as
+ * guess:pattern (see Feedback.toString()) and separated by commas, ex: raise:..Y.G,clout:GG... Empty for the first
+ * guess. 503 if there is no tree
+ * <p>
+ * 6. GET /words?lang=...&size=n&pattern=...&max=n: the words of that dictionary (see DictionaryRegistry) matching a
+ * wildcard pattern, or with anagram=... instead of pattern the anagrams of some letters (see WordQuery). The size
+ * defaults to the pattern length. 503 if there is no registry. The index is taken once per request, so a dictionary
+ * reloaded meanwhile only shows in the next requests
+ * <p>
+ * Every request reads the current DictionaryIndex once and answers from it, so a word size switched meanwhile only
+ * shows in the next requests. The ranker and the tree belong to the index they were built for, /rank and /next answer
+ * 503 on any other one
+ * <p>
+ * Requests run on a virtual thread each when the JDK has them (21+), on a cached thread pool otherwise. At most
+ * maxRequests are served at the same time, the rest get a 503 right away instead of queueing up.
+ */
+public class SolverServer {
+    static final int MAX_BODY_BYTES = 1 << 20;
+    static final int MAX_BATCH_SIZE = 10_000;
+    static final int MAX_BATCH_WORDS = 100_000;
+    static final int MAX_RANKED = 100;
+
+    private final Supplier<DictionaryIndex> dictionary;
+    // The index the ranker and the tree were built for
+    private final DictionaryIndex ranked;
+    // null if there is no pattern matrix for the word size, /rank answers 503 then
+    private final GuessRanker ranker;
+    private final boolean hardMode;
+    // null if there is no tree for the dictionary, /next answers 503 then
+    private final DecisionTree tree;
+    // null if the dictionaries couldn't be loaded, /words answers 503 then
+    private final DictionaryRegistry registry;
+    private final Semaphore permits;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * @param dictionary: the current index, read once per request
+     * @param ranked:     the index ranker and tree were built for
+     * @param hardMode:   rank only the legal guesses, see HardMode
+     */
+    public SolverServer(Supplier<DictionaryIndex> dictionary, DictionaryIndex ranked, GuessRanker ranker,
+                        boolean hardMode, DecisionTree tree, DictionaryRegistry registry, int port, int maxRequests)
+            throws IOException {
+        if (maxRequests <= 0)
+            throw new IllegalArgumentException("Max requests must be positive, got " + maxRequests);
+        this.dictionary = dictionary;
+        this.ranked = ranked;
+        this.ranker = ranker;
+        this.hardMode = hardMode;
+        this.tree = tree;
+        this.registry = registry;
+        this.permits = new Semaphore(maxRequests);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = newRequestExecutor();
+        server.setExecutor(executor);
+        server.createContext("/solve", limited("GET", this::solve));
+        server.createContext("/rank", limited("GET", this::rank));
+        server.createContext("/batch", limited("POST", this::batch));
+        server.createContext("/metrics", limited("GET", this::metrics));
+        server.createContext("/next", limited("GET", this::next));
+        server.createContext("/words", limited("GET", this::words));
+    }
+
+    /**
+     * @return One virtual thread per request if the JDK has them, a cached thread pool otherwise
+     */
+    static ExecutorService newRequestExecutor() {
+        try {
+            // Looked up by reflection so the project still builds for 17
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException err) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * @param delay: seconds to wait for the requests being served
+     */
+    public void stop(int delay) {
+        server.stop(delay);
+        executor.shutdown();
+    }
+
+    /**
+     * @return The port the server listens on, useful when created with port 0
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private interface Endpoint {
+        /**
+         * @return The answer body
+         */
+        String handle(Map<String, String> query, HttpExchange exchange) throws IOException;
+    }
+
+    /**
+     * Wraps an endpoint with the method check, the back-pressure limit and the error answers
+     */
+    private HttpHandler limited(String method, Endpoint endpoint) {
+        return exchange -> {
+            try (exchange) {
+                if (!exchange.getRequestMethod().equals(method)) {
+                    exchange.getResponseHeaders().set("Allow", method);
+                    send(exchange, 405, "Use " + method + "\n");
+                    return;
+                }
+                if (!permits.tryAcquire()) {
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    send(exchange, 503, "Too many requests\n");
+                    return;
+                }
+                try {
+                    send(exchange, 200, endpoint.handle(parseQuery(exchange.getRequestURI().getRawQuery()), exchange));
+                } catch (IllegalArgumentException err) {
+                    send(exchange, 400, err.getMessage() + "\n");
+                } catch (IllegalStateException err) {
+                    send(exchange, 503, err.getMessage() + "\n");
+                } catch (RuntimeException err) {
+                    err.printStackTrace();
+                    send(exchange, 500, "Internal error\n");
+                } finally {
+                    permits.release();
+                }
+            }
+        };
+    }
+
+    private String solve(Map<String, String> query, HttpExchange exchange) {
+        int max = intParameter(query, "max", 0);
+        StringBuilder sb = new StringBuilder();
+        for (String word : dictionary.get().getQueryCache().solve(Clue.parseList(query.getOrDefault("clues", "")), max))
+            sb.append(word).append('\n');
+        return sb.toString();
+    }
+
+    private String rank(Map<String, String> query, HttpExchange exchange) {
+        DictionaryIndex current = dictionary.get();
+        if (ranker == null || current != ranked)
+            throw new IllegalStateException("Ranking isn't available for this dictionary");
+        int k = intParameter(query, "k", 10);
+        if (k <= 0 || k > MAX_RANKED)
+            throw new IllegalArgumentException("k must be between 1 and " + MAX_RANKED);
+        List<Clue> clues = Clue.parseList(query.getOrDefault("clues", ""));
+        int[] candidates = current.getQueryCache().solve(clues);
+        int[] guesses = new int[current.getWords().size()];
+        int guessCount;
+        if (hardMode) {
+            guessCount = current.getHardMode().legalGuesses(HardMode.hints(clues), guesses);
+        } else {
+            for (int i = 0; i < guesses.length; i++)
+                guesses[i] = i;
+            guessCount = guesses.length;
+        }
+
+        int[] best = ranker.rank(candidates, candidates.length, guesses, guessCount, k);
+        int[] histogram = new int[Feedback.patternCount(current.getWordSize())];
+        StringBuilder sb = new StringBuilder();
+        for (int guess : best) {
+            sb.append(current.getWords().get(guess)).append(' ')
+                    .append(String.format("%.4f", ranker.entropy(guess, candidates, candidates.length, histogram)))
+                    .append('\n');
+        }
+        return sb.toString();
+    }
+
+    private String batch(Map<String, String> query, HttpExchange exchange) throws IOException {
+        int max = intParameter(query, "max", 0);
+        if (max <= 0)
+            max = Integer.MAX_VALUE;
+        String[] lines = readBody(exchange).split("\n");
+        if (lines.length > MAX_BATCH_SIZE)
+            throw new IllegalArgumentException("At most " + MAX_BATCH_SIZE + " clue lists per batch");
+        List<List<Clue>> clues = new ArrayList<>(lines.length);
+        for (String line : lines)
+            clues.add(Clue.parseList(line));
+        DictionaryIndex current = dictionary.get();
+        int[][] solutions = current.getBatchSolver().solve(clues);
+        long total = 0;
+        for (int[] solution : solutions)
+            total += Math.min(solution.length, max);
+        if (total > MAX_BATCH_WORDS)
+            throw new IllegalArgumentException("The answer would have " + total + " words, at most " + MAX_BATCH_WORDS
+                    + " per batch, use a lower max or fewer clue lists");
+        StringBuilder sb = new StringBuilder();
+        for (int[] solution : solutions) {
+            for (int i = 0; i < Math.min(solution.length, max); i++)
+                sb.append(i == 0 ? "" : " ").append(current.getWords().get(solution[i]));
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    private String metrics(Map<String, String> query, HttpExchange exchange) {
+        if (!Metrics.ENABLED)
+            throw new IllegalStateException("Metrics are off, set metrics=true in the config file");
+        return Metrics.snapshot().toString();
+    }
+
+    private String next(Map<String, String> query, HttpExchange exchange) {
+        DictionaryIndex current = dictionary.get();
+        if (tree == null || current != ranked)
+            throw new IllegalStateException("There is no decision tree for this dictionary");
+        String history = query.getOrDefault("history", "");
+        int node = tree.root();
+        if (!history.isBlank()) {
+            for (String round : history.split(",")) {
+                String[] parts = round.trim().split(":");
+                if (parts.length != 2)
+                    throw new IllegalArgumentException("Rounds must be guess:pattern, got " + round);
+                String guess = current.getWords().get(tree.guess(node));
+                if (!parts[0].equals(guess))
+                    throw new IllegalArgumentException("The tree guesses " + guess + " there, not " + parts[0]);
+                int pattern = Feedback.parse(parts[1], current.getWordSize());
+                node = tree.child(node, pattern);
+                if (node < 0)
+                    throw new IllegalArgumentException("No answer left after " + round);
+            }
+        }
+        return current.getWords().get(tree.guess(node)) + '\n';
+    }
+
+    private String words(Map<String, String> query, HttpExchange exchange) {
+        if (registry == null)
+            throw new IllegalStateException("There are no dictionaries loaded");
+        String language = query.getOrDefault("lang", "");
+        WordQuery wordQuery;
+        if (query.containsKey("anagram"))
+            wordQuery = WordQuery.anagram(query.get("anagram"));
+        else if (query.containsKey("pattern"))
+            wordQuery = WordQuery.parse(query.get("pattern"));
+        else
+            throw new IllegalArgumentException("Missing pattern or anagram");
+        int size = intParameter(query, "size", wordQuery.getWordSize());
+        if (size != wordQuery.getWordSize())
+            throw new IllegalArgumentException("The query is for " + wordQuery.getWordSize() + " letter words, not " + size);
+        DictionaryIndex index = registry.get(language, size);
+        if (index == null)
+            throw new IllegalArgumentException("No dictionary for language " + language + " and size " + size);
+        StringBuilder sb = new StringBuilder();
+        for (String word : index.find(wordQuery, intParameter(query, "max", 0)))
+            sb.append(word).append('\n');
+        return sb.toString();
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readNBytes(MAX_BODY_BYTES + 1);
+            if (body.length > MAX_BODY_BYTES)
+                throw new IllegalArgumentException("Body bigger than " + MAX_BODY_BYTES + " bytes");
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null)
+            return query;
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            query.put(key, value);
+        }
+        return query;
+    }
+
+    private static int intParameter(Map<String, String> query, String name, int defaultValue) {
+        String value = query.get(name);
+        if (value == null || value.isEmpty())
+            return defaultValue;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException err) {
+            throw new IllegalArgumentException("Bad " + name + ": " + value);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package dev.derivada;
+
+/**
+ * Guesses what the decision tree says for the rounds played (see DecisionTree), a few lookups per round
+ * <p>
+ * Games that leave the tree (a guess that isn't the tree's, or a round played with clues) are handed to the fallback
+ * strategy.
+ */
+public class TreeStrategy implements GuessStrategy {
+    private final DecisionTree tree;
+    private final GuessStrategy fallback;
+
+    public TreeStrategy(DecisionTree tree, GuessStrategy fallback) {
+        this.tree = tree;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public int nextGuess(GameSession session) {
+        int node = tree.find(session);
+        return node < 0 ? fallback.nextGuess(session) : tree.guess(node);
+    }
+}
@@ -0,0 +1,215 @@
+package dev.derivada;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Words of a text dictionary split by length, so any word size can be used without reading the file again
+ * <p>
+ * The file is memory mapped and cut into chunks at line boundaries, the chunks are parsed in parallel:
+ * <p>
+ * 1. A header ending with a "---" line (like the SCOWL one on dict_full.txt) within the first HEADER_MAX_LINES lines
+ * is skipped
+ * <p>
+ * 2. Every line is normalized to lowercase a-z. Lines with anything else (apostrophes, digits, hyphens, non ASCII
+ * letters...) are rejected, since the solvers encodings only work for a-z. Ex: "Aaron" -> "aaron", "A's" rejected
+ * <p>
+ * 3. The letters of the accepted words are packed per length in each chunk, without creating strings
+ * <p>
+ * Then the chunks are merged in file order, one WordTable per length, dropping the repeated words ("A" and "a").
+ * No String is created, the repeats are found with a hash table of word ids.
+ */
+public class WordList {
+    static final int CHUNK_SIZE = 64 * 1024;
+    static final int HEADER_MAX_LINES = 100;
+    // Longer lines are rejected
+    static final int MAX_LENGTH = 32;
+    private static final String HEADER_END = "---";
+
+    // partitions[n] = words of n letters, in file order
+    private final WordTable[] partitions;
+
+    private WordList(WordTable[] partitions) {
+        this.partitions = partitions;
+    }
+
+    /**
+     * Reads and normalizes the dictionary, see class docs
+     */
+    public static WordList read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Dictionary too big (" + channel.size() + " bytes): " + path);
+            int size = (int) channel.size();
+            // Absolute gets don't move the buffer position, so the chunks can share it
+            ByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            int start = headerEnd(map, size);
+            int chunks = Math.max(1, (size - start) / CHUNK_SIZE);
+            int[] bounds = new int[chunks + 1];
+            bounds[0] = start;
+            for (int c = 1; c < chunks; c++)
+                bounds[c] = nextLine(map, start + c * ((size - start) / chunks), size);
+            bounds[chunks] = size;
+
+            Chunk[] parsed = IntStream.range(0, chunks).parallel()
+                    .mapToObj(c -> parse(map, bounds[c], bounds[c + 1]))
+                    .toArray(Chunk[]::new);
+            return new WordList(merge(parsed));
+        }
+    }
+
+    /**
+     * @return The position after the header, 0 if the file has none
+     */
+    private static int headerEnd(ByteBuffer map, int size) {
+        int line = 0;
+        for (int i = 0; i < HEADER_MAX_LINES && line < size; i++) {
+            int end = lineEnd(map, line, size);
+            if (isHeaderEnd(map, line, end))
+                return nextLine(map, end, size);
+            line = nextLine(map, end, size);
+        }
+        return 0;
+    }
+
+    private static boolean isHeaderEnd(ByteBuffer map, int start, int end) {
+        // Trailing \r of CRLF files
+        if (end > start && map.get(end - 1) == '\r')
+            end--;
+        if (end - start != HEADER_END.length())
+            return false;
+        for (int i = 0; i < HEADER_END.length(); i++) {
+            if (map.get(start + i) != HEADER_END.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private static int lineEnd(ByteBuffer map, int from, int size) {
+        while (from < size && map.get(from) != '\n')
+            from++;
+        return from;
+    }
+
+    /**
+     * @return The start of the line after the one containing from
+     */
+    private static int nextLine(ByteBuffer map, int from, int size) {
+        int end = lineEnd(map, from, size);
+        return end < size ? end + 1 : size;
+    }
+
+    private static Chunk parse(ByteBuffer map, int start, int end) {
+        Chunk chunk = new Chunk();
+        byte[] word = new byte[MAX_LENGTH];
+        int length = 0;
+        boolean valid = true;
+        for (int i = start; i <= end; i++) {
+            byte b = i < end ? map.get(i) : (byte) '\n';
+            if (b == '\n') {
+                if (valid && length > 0)
+                    chunk.add(word, length);
+                length = 0;
+                valid = true;
+            } else if (b == '\r' || !valid) {
+                continue;
+            } else if (length == MAX_LENGTH) {
+                valid = false;
+            } else if (b >= 'a' && b <= 'z') {
+                word[length++] = b;
+            } else if (b >= 'A' && b <= 'Z') {
+                word[length++] = (byte) (b - 'A' + 'a');
+            } else {
+                valid = false;
+            }
+        }
+        return chunk;
+    }
+
+    private static WordTable[] merge(Chunk[] chunks) {
+        WordTable[] partitions = new WordTable[MAX_LENGTH + 1];
+        for (int n = 0; n <= MAX_LENGTH; n++) {
+            int total = 0;
+            for (Chunk chunk : chunks)
+                total += chunk.counts[n];
+            byte[] letters = new byte[total * n];
+            // Open addressing, ids of the words kept + 1 (0 = empty)
+            int[] seen = new int[Integer.highestOneBit(Math.max(1, total) * 2) * 2];
+            int k = 0;
+            for (Chunk chunk : chunks) {
+                for (int i = 0; i < chunk.counts[n]; i++) {
+                    int from = i * n;
+                    int h = hash(chunk.letters[n], from, n) & (seen.length - 1);
+                    boolean repeated = false;
+                    while (seen[h] != 0) {
+                        int other = (seen[h] - 1) * n;
+                        if (Arrays.equals(chunk.letters[n], from, from + n, letters, other, other + n)) {
+                            repeated = true;
+                            break;
+                        }
+                        h = (h + 1) & (seen.length - 1);
+                    }
+                    if (repeated)
+                        continue;
+                    System.arraycopy(chunk.letters[n], from, letters, k * n, n);
+                    seen[h] = ++k;
+                }
+            }
+            partitions[n] = new WordTable(n, k == total ? letters : Arrays.copyOf(letters, k * n));
+        }
+        return partitions;
+    }
+
+    private static int hash(byte[] letters, int from, int length) {
+        int h = 0;
+        for (int p = from; p < from + length; p++)
+            h = 31 * h + letters[p];
+        // Spreads the bits, the table index only takes the low ones
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @return The words of the given length in file order, empty if there are none
+     */
+    public WordTable get(int length) {
+        if (length < 0 || length > MAX_LENGTH)
+            return new WordTable(0, new byte[0]);
+        return partitions[length];
+    }
+
+    /**
+     * @return The number of words of each length, indexed by length
+     */
+    public int[] sizes() {
+        int[] sizes = new int[partitions.length];
+        for (int n = 0; n < partitions.length; n++)
+            sizes[n] = partitions[n].size();
+        return sizes;
+    }
+
+    /**
+     * Accepted words of one chunk, letters[n] holds the words of n letters back to back
+     */
+    private static final class Chunk {
+        final byte[][] letters = new byte[MAX_LENGTH + 1][];
+        final int[] counts = new int[MAX_LENGTH + 1];
+
+        void add(byte[] word, int length) {
+            byte[] packed = letters[length];
+            int offset = counts[length] * length;
+            if (packed == null) {
+                packed = letters[length] = new byte[Math.max(16, length) * 16];
+            } else if (offset + length > packed.length) {
+                packed = letters[length] = Arrays.copyOf(packed, Math.max(packed.length * 2, offset + length));
+            }
+            System.arraycopy(word, 0, packed, offset, length);
+            counts[length]++;
+        }
+    }
+}
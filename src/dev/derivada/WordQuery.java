@@ -0,0 +1,234 @@
+package dev.derivada;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A query on the letters of the words of one size, answered by WordTrie
+ * <p>
+ * 1. Per position: the letters allowed there. parse() reads them from a wildcard pattern, ex: "?r??e", "[^ae]r??e"
+ * <p>
+ * 2. Per letter: the minimum and maximum number of times it is in the word. anagram() sets both to the letters of a
+ * multiset, ex: "aelrt" matches "alert" and "later"
+ * <p>
+ * Positions are checked exactly, like the clues of every solver, and the letter counts go beyond the presence of the
+ * clues, so repeated letters work: "?r??e" with at least two e's only matches words with an e at the end and another
+ * one elsewhere. Queries are built with the chained setters and must not be modified while a search uses them.
+ */
+public final class WordQuery {
+    private static final int ALPHABET_SIZE = 26;
+    private static final int ALL_LETTERS = (1 << ALPHABET_SIZE) - 1;
+
+    private final int wordSize;
+    // allowed[p] = bit l set if letter 'a' + l can be at position p
+    private final int[] allowed;
+    // min[l], max[l] = bounds of the times letter 'a' + l is in the word
+    private final int[] min = new int[ALPHABET_SIZE];
+    private final int[] max = new int[ALPHABET_SIZE];
+
+    /**
+     * Matches every word of wordSize letters
+     */
+    public WordQuery(int wordSize) {
+        if (wordSize <= 0)
+            throw new IllegalArgumentException("Word size must be positive, got " + wordSize);
+        this.wordSize = wordSize;
+        this.allowed = new int[wordSize];
+        Arrays.fill(allowed, ALL_LETTERS);
+        Arrays.fill(max, wordSize);
+    }
+
+    /**
+     * @param text: one item per position: a letter, '?' for any letter, or a class of letters in brackets, "[aeiou]"
+     *              or "[^aeiou]" for any but those
+     */
+    public static WordQuery parse(String text) {
+        int[] masks = new int[text.length()];
+        int n = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '?') {
+                masks[n++] = ALL_LETTERS;
+            } else if (c >= 'a' && c <= 'z') {
+                masks[n++] = 1 << (c - 'a');
+            } else if (c == '[') {
+                int end = text.indexOf(']', i);
+                if (end < 0)
+                    throw new IllegalArgumentException("Unclosed [ in pattern: " + text);
+                boolean negated = end > i + 1 && text.charAt(i + 1) == '^';
+                int mask = 0;
+                for (int j = negated ? i + 2 : i + 1; j < end; j++) {
+                    char l = text.charAt(j);
+                    if (l < 'a' || l > 'z')
+                        throw new IllegalArgumentException("Bad letter " + l + " in pattern: " + text);
+                    mask |= 1 << (l - 'a');
+                }
+                masks[n++] = negated ? ALL_LETTERS & ~mask : mask;
+                i = end;
+            } else {
+                throw new IllegalArgumentException("Bad character " + c + " in pattern: " + text);
+            }
+        }
+        if (n == 0)
+            throw new IllegalArgumentException("Empty pattern");
+        WordQuery query = new WordQuery(n);
+        System.arraycopy(masks, 0, query.allowed, 0, n);
+        return query;
+    }
+
+    /**
+     * @param letters: the letters of the words, '?' for a blank that can be any letter. The word size is its length
+     */
+    public static WordQuery anagram(String letters) {
+        WordQuery query = new WordQuery(letters.length());
+        int blanks = 0;
+        Arrays.fill(query.max, 0);
+        for (int i = 0; i < letters.length(); i++) {
+            char c = letters.charAt(i);
+            if (c == '?') {
+                blanks++;
+            } else if (c >= 'a' && c <= 'z') {
+                query.min[c - 'a']++;
+                query.max[c - 'a']++;
+            } else {
+                throw new IllegalArgumentException("Bad letter " + c + " in anagram: " + letters);
+            }
+        }
+        for (int l = 0; l < ALPHABET_SIZE; l++)
+            query.max[l] += blanks;
+        return query;
+    }
+
+    /**
+     * The clues as a query, positional clues checked exactly (like BitmaskSolver)
+     *
+     * @param clues: see WordleTool class docs
+     */
+    public static WordQuery of(List<Clue> clues, int wordSize) {
+        WordQuery query = new WordQuery(wordSize);
+        for (Clue c : clues) {
+            if (c.getType() < -1 || c.getType() > wordSize || c.getLetter() < 'a' || c.getLetter() > 'z')
+                throw new IllegalArgumentException("Clue out of range for " + wordSize + " letter words: " + c);
+            if (c.getType() == -1)
+                query.atMost(c.getLetter(), 0);
+            else if (c.getType() == 0)
+                query.atLeast(c.getLetter(), 1);
+            else
+                query.fix(c.getType() - 1, c.getLetter());
+        }
+        return query;
+    }
+
+    /**
+     * @param position: starting at 0
+     */
+    public WordQuery fix(int position, char letter) {
+        allowed[checkPosition(position)] &= 1 << checkLetter(letter);
+        return this;
+    }
+
+    /**
+     * @param position: starting at 0
+     */
+    public WordQuery exclude(int position, char letter) {
+        allowed[checkPosition(position)] &= ~(1 << checkLetter(letter));
+        return this;
+    }
+
+    public WordQuery atLeast(char letter, int times) {
+        int l = checkLetter(letter);
+        min[l] = Math.max(min[l], times);
+        return this;
+    }
+
+    public WordQuery atMost(char letter, int times) {
+        int l = checkLetter(letter);
+        max[l] = Math.min(max[l], times);
+        return this;
+    }
+
+    /**
+     * The same check a WordTrie search does, one word at a time
+     */
+    public boolean matches(WordTable words, int id) {
+        if (words.getWordSize() != wordSize)
+            return false;
+        int[] counts = new int[ALPHABET_SIZE];
+        for (int p = 0; p < wordSize; p++) {
+            int l = words.charAt(id, p) - 'a';
+            if ((allowed[p] >>> l & 1) == 0 || ++counts[l] > max[l])
+                return false;
+        }
+        for (int l = 0; l < ALPHABET_SIZE; l++) {
+            if (counts[l] < min[l])
+                return false;
+        }
+        return true;
+    }
+
+    private int checkPosition(int position) {
+        if (position < 0 || position >= wordSize)
+            throw new IndexOutOfBoundsException("Position " + position + " out of " + wordSize);
+        return position;
+    }
+
+    private static int checkLetter(char letter) {
+        if (letter < 'a' || letter > 'z')
+            throw new IllegalArgumentException("Bad letter: " + letter);
+        return letter - 'a';
+    }
+
+    public int getWordSize() {
+        return wordSize;
+    }
+
+    /**
+     * @return The letters allowed at the position (0 based), bit l for letter 'a' + l
+     */
+    int getAllowed(int position) {
+        return allowed[position];
+    }
+
+    /**
+     * @param letter: 0 for 'a'
+     */
+    int getMin(int letter) {
+        return min[letter];
+    }
+
+    /**
+     * @param letter: 0 for 'a'
+     */
+    int getMax(int letter) {
+        return max[letter];
+    }
+
+    /**
+     * @return The pattern in parse() form, followed by the letter bounds that aren't the default ones
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int mask : allowed) {
+            if (mask == ALL_LETTERS) {
+                sb.append('?');
+            } else if (Integer.bitCount(mask) == 1) {
+                sb.append((char) ('a' + Integer.numberOfTrailingZeros(mask)));
+            } else {
+                boolean negated = Integer.bitCount(mask) > ALPHABET_SIZE / 2;
+                sb.append(negated ? "[^" : "[");
+                int letters = negated ? ALL_LETTERS & ~mask : mask;
+                for (int l = 0; l < ALPHABET_SIZE; l++) {
+                    if ((letters >>> l & 1) != 0)
+                        sb.append((char) ('a' + l));
+                }
+                sb.append(']');
+            }
+        }
+        for (int l = 0; l < ALPHABET_SIZE; l++) {
+            if (min[l] > 0 || max[l] < wordSize)
+                sb.append(' ').append((char) ('a' + l)).append(':').append(min[l]).append('-').append(max[l]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,100 @@
+package dev.derivada;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Words of one size stored back to back in a single byte array, one byte per letter (a-z)
+ * <p>
+ * Replaces the String[] dictionaries: a 5 letter String costs an object header, a byte array with its own header and
+ * a reference, around 50 bytes, here it is 5. Word n is letters[n * wordSize, (n + 1) * wordSize), so the solvers work
+ * on word ids (dictionary indexes) and only get() creates a String, when the words are printed or sent.
+ */
+public final class WordTable {
+    private final int wordSize;
+    private final int size;
+    private final byte[] letters;
+
+    /**
+     * @param letters: the words back to back, letters.length / wordSize of them. Not copied, must not be modified
+     */
+    public WordTable(int wordSize, byte[] letters) {
+        if (wordSize < 0 || (wordSize == 0 ? letters.length != 0 : letters.length % wordSize != 0))
+            throw new IllegalArgumentException("Letters don't hold words of " + wordSize + " letters");
+        this.wordSize = wordSize;
+        this.size = wordSize == 0 ? 0 : letters.length / wordSize;
+        this.letters = letters;
+    }
+
+    /**
+     * @param words: words of wordSize lowercase a-z letters
+     */
+    public static WordTable of(String[] words, int wordSize) {
+        byte[] letters = new byte[words.length * wordSize];
+        for (int i = 0; i < words.length; i++) {
+            if (words[i].length() != wordSize)
+                throw new IllegalArgumentException("Word " + words[i] + " isn't " + wordSize + " letters long");
+            for (int p = 0; p < wordSize; p++)
+                letters[i * wordSize + p] = (byte) words[i].charAt(p);
+        }
+        return new WordTable(wordSize, letters);
+    }
+
+    /**
+     * @return The word as a new String
+     */
+    public String get(int id) {
+        return new String(letters, id * wordSize, wordSize, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * @return The letter at position (0 based) of the word
+     */
+    public char charAt(int id, int position) {
+        return (char) letters[id * wordSize + position];
+    }
+
+    /**
+     * @param position: 0 based, positions out of the word are never a match
+     * @return true if the word has the letter at the position
+     */
+    public boolean hasLetterAt(int id, int position, int letter) {
+        return position >= 0 && position < wordSize && letters[id * wordSize + position] == letter;
+    }
+
+    /**
+     * @param ids: word ids, ex: the result buffer of a solver
+     * @param n:   number of valid entries in ids
+     * @return The words as Strings, in the same order
+     */
+    public String[] get(int[] ids, int n) {
+        String[] words = new String[n];
+        for (int i = 0; i < n; i++)
+            words[i] = get(ids[i]);
+        return words;
+    }
+
+    /**
+     * @return Every word as a String, for the code that still works on String[]
+     */
+    public String[] toArray() {
+        String[] words = new String[size];
+        for (int i = 0; i < size; i++)
+            words[i] = get(i);
+        return words;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getWordSize() {
+        return wordSize;
+    }
+
+    /**
+     * @return The letters of all the words, must not be modified
+     */
+    byte[] getLetters() {
+        return letters;
+    }
+}
@@ -0,0 +1,394 @@
+package dev.derivada;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The words of one size as a DAWG (a trie with the equal suffixes merged), answering WordQuery searches
+ * <p>
+ * 1. Build: the words are sorted and added one by one. Once a word leaves a branch, the nodes of that branch can't get
+ * more children, so each one is replaced by an equal node built before (same letters to the same children) or
+ * registered as a new one. Only the branch of the last word is ever held unfinished.
+ * <p>
+ * 2. Every node keeps the number of words below it, the letters of all of them and the letters each of the positions
+ * below it can have (all the words of a node have the same length, so every node is at a fixed depth). A word's index
+ * in sorted order is the sum of the words below the siblings before its path, and a table turns it into the
+ * dictionary index.
+ * <p>
+ * 3. Search: a depth first walk that prunes a branch as soon as its letter isn't allowed at that position, a position
+ * below it can't have any allowed letter, a letter is over its maximum, or the letters still below their minimum don't
+ * fit in the positions left or aren't in any word of the branch. A pruned branch is never entered, so a selective
+ * query only visits a few nodes.
+ * <p>
+ * The index is immutable once built, any number of searches can run on it at once.
+ */
+public final class WordTrie {
+    private static final int ALPHABET_SIZE = 26;
+    // The node every word ends in, it has no edges
+    private static final int SINK = 0;
+
+    private final int wordSize;
+    private final int root;
+    // Edges of node n: [edgeStart[n], edgeStart[n + 1]), sorted by letter
+    private final int[] edgeStart;
+    private final byte[] edgeLetters;
+    private final int[] edgeTargets;
+    // wordCounts[n] = words below node n, letterMasks[n] = letters of those words (bit l for 'a' + l)
+    private final int[] wordCounts;
+    private final int[] letterMasks;
+    // positionMasks[n * wordSize + p] = letters at position p of the words below node n, for the positions below it
+    private final int[] positionMasks;
+    // dictionaryIndexes[rank] = dictionary index of the word with that rank in sorted order, null if the dictionary is
+    // already sorted
+    private final int[] dictionaryIndexes;
+
+    private WordTrie(int wordSize, int root, int[] edgeStart, byte[] edgeLetters, int[] edgeTargets, int[] wordCounts,
+                     int[] letterMasks, int[] positionMasks, int[] dictionaryIndexes) {
+        this.wordSize = wordSize;
+        this.root = root;
+        this.edgeStart = edgeStart;
+        this.edgeLetters = edgeLetters;
+        this.edgeTargets = edgeTargets;
+        this.wordCounts = wordCounts;
+        this.letterMasks = letterMasks;
+        this.positionMasks = positionMasks;
+        this.dictionaryIndexes = dictionaryIndexes;
+    }
+
+    /**
+     * @param words: distinct words, see WordList
+     */
+    public static WordTrie build(WordTable words) {
+        int wordSize = words.getWordSize();
+        if (wordSize <= 0)
+            throw new IllegalArgumentException("Word size must be positive, got " + wordSize);
+        Integer[] order = new Integer[words.size()];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        Arrays.sort(order, (a, b) -> compare(words, a, b));
+        boolean sorted = true;
+        for (int i = 0; i < order.length; i++)
+            sorted &= order[i] == i;
+
+        Builder builder = new Builder(wordSize);
+        for (int id : order)
+            builder.add(words, id);
+        int root = builder.finish();
+
+        int[] dictionaryIndexes = null;
+        if (!sorted) {
+            dictionaryIndexes = new int[order.length];
+            for (int i = 0; i < order.length; i++)
+                dictionaryIndexes[i] = order[i];
+        }
+        int nodes = builder.nodes;
+        return new WordTrie(wordSize, root, Arrays.copyOf(builder.edgeStart, nodes + 1),
+                Arrays.copyOf(builder.edgeLetters, builder.edges), Arrays.copyOf(builder.edgeTargets, builder.edges),
+                Arrays.copyOf(builder.wordCounts, nodes), Arrays.copyOf(builder.letterMasks, nodes),
+                Arrays.copyOf(builder.positionMasks, nodes * wordSize), dictionaryIndexes);
+    }
+
+    private static int compare(WordTable words, int a, int b) {
+        for (int p = 0; p < words.getWordSize(); p++) {
+            int diff = words.charAt(a, p) - words.charAt(b, p);
+            if (diff != 0)
+                return diff;
+        }
+        return 0;
+    }
+
+    /**
+     * @param result:    output buffer for the dictionary indexes of the matching words, at least size() long (or
+     *                   maxLength)
+     * @param maxLength: the maximum number of words fetched, unlimited for values <= 0. The first ones in alphabetical
+     *                   order are kept
+     * @return The number of matching words written to result, in dictionary order
+     */
+    public int find(WordQuery query, int[] result, int maxLength) {
+        Search search = new Search(query, result, maxLength <= 0 ? Integer.MAX_VALUE : maxLength);
+        search.run();
+        if (dictionaryIndexes != null)
+            Arrays.sort(result, 0, search.found);
+        return search.found;
+    }
+
+    /**
+     * @return The number of matching words
+     */
+    public int count(WordQuery query) {
+        Search search = new Search(query, null, Integer.MAX_VALUE);
+        search.run();
+        return search.found;
+    }
+
+    /**
+     * @return The number of nodes a search of the query enters, a node shared by several branches counts once per
+     * branch
+     */
+    public long countVisits(WordQuery query) {
+        Search search = new Search(query, null, Integer.MAX_VALUE);
+        search.run();
+        return search.visits;
+    }
+
+    /**
+     * One search, with the letter counts of the current branch
+     */
+    private final class Search {
+        private final WordQuery query;
+        // null to only count
+        private final int[] result;
+        private final int maxLength;
+        private final int[] counts = new int[ALPHABET_SIZE];
+        private final int[] max = new int[ALPHABET_SIZE];
+        private final int[] min = new int[ALPHABET_SIZE];
+        // Positions that don't allow every letter, the only ones positionMasks can prune
+        private final int[] restricted;
+        private int found;
+        private long visits;
+
+        Search(WordQuery query, int[] result, int maxLength) {
+            this.query = query;
+            this.result = result;
+            this.maxLength = maxLength;
+            for (int l = 0; l < ALPHABET_SIZE; l++) {
+                min[l] = query.getMin(l);
+                max[l] = query.getMax(l);
+            }
+            int[] positions = new int[wordSize];
+            int n = 0;
+            for (int p = 0; p < Math.min(wordSize, query.getWordSize()); p++) {
+                if (Integer.bitCount(query.getAllowed(p)) < ALPHABET_SIZE)
+                    positions[n++] = p;
+            }
+            this.restricted = Arrays.copyOf(positions, n);
+        }
+
+        void run() {
+            if (query.getWordSize() != wordSize)
+                throw new IllegalArgumentException("Query for " + query.getWordSize() + " letter words on a "
+                        + wordSize + " letter index");
+            // Letters below their minimum and how many more letters they need
+            int required = 0, missing = 0;
+            for (int l = 0; l < ALPHABET_SIZE; l++) {
+                if (min[l] > max[l])
+                    return;
+                if (min[l] > 0) {
+                    required |= 1 << l;
+                    missing += min[l];
+                }
+            }
+            if (missing <= wordSize && (required & ~letterMasks[root]) == 0 && reachable(root, 0))
+                visit(root, 0, 0, required, missing);
+        }
+
+        /**
+         * @param rank: sorted index of the first word below the node
+         */
+        private void visit(int node, int depth, int rank, int required, int missing) {
+            visits++;
+            int allowed = query.getAllowed(depth);
+            int left = wordSize - depth - 1;
+            for (int e = edgeStart[node]; e < edgeStart[node + 1] && found < maxLength; e++) {
+                int l = edgeLetters[e];
+                int child = edgeTargets[e];
+                int childRank = rank;
+                rank += wordCounts[child];
+                if ((allowed >>> l & 1) == 0 || counts[l] == max[l])
+                    continue;
+                int childRequired = required, childMissing = missing;
+                if (counts[l] < min[l]) {
+                    childMissing--;
+                    if (counts[l] + 1 == min[l])
+                        childRequired &= ~(1 << l);
+                }
+                if (childMissing > left || (childRequired & ~letterMasks[child]) != 0 || !reachable(child, depth + 1))
+                    continue;
+                if (child == SINK) {
+                    if (result != null)
+                        result[found] = dictionaryIndexes == null ? childRank : dictionaryIndexes[childRank];
+                    found++;
+                    continue;
+                }
+                counts[l]++;
+                visit(child, depth + 1, childRank, childRequired, childMissing);
+                counts[l]--;
+            }
+        }
+
+        /**
+         * @return false if a restricted position below the node can't have any of its allowed letters
+         */
+        private boolean reachable(int node, int depth) {
+            int base = node * wordSize;
+            for (int p : restricted) {
+                if (p >= depth && (positionMasks[base + p] & query.getAllowed(p)) == 0)
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Incremental DAWG construction from sorted words, see class docs
+     */
+    private static final class Builder {
+        private final int wordSize;
+        // Unfinished branch of the last word: the node at depth d has pendingSizes[d] edges so far
+        private final byte[][] pendingLetters;
+        private final int[][] pendingTargets;
+        private final int[] pendingSizes;
+        private final byte[] last;
+        private boolean empty = true;
+        // Finished nodes, SINK included
+        private final Map<Signature, Integer> registry = new HashMap<>();
+        int nodes, edges;
+        int[] edgeStart = new int[64];
+        byte[] edgeLetters = new byte[64];
+        int[] edgeTargets = new int[64];
+        int[] wordCounts = new int[64];
+        int[] letterMasks = new int[64];
+        int[] positionMasks;
+
+        Builder(int wordSize) {
+            this.wordSize = wordSize;
+            this.pendingLetters = new byte[wordSize][ALPHABET_SIZE];
+            this.pendingTargets = new int[wordSize][ALPHABET_SIZE];
+            this.pendingSizes = new int[wordSize];
+            this.last = new byte[wordSize];
+            this.positionMasks = new int[64 * wordSize];
+            // SINK: no edges, one word (the empty suffix)
+            nodes = 1;
+            wordCounts[SINK] = 1;
+        }
+
+        void add(WordTable words, int id) {
+            int common = 0;
+            if (!empty) {
+                while (common < wordSize && words.charAt(id, common) - 'a' == last[common])
+                    common++;
+                if (common == wordSize)
+                    throw new IllegalArgumentException("Repeated word: " + words.get(id));
+                // The branch of the last word below the common prefix is finished
+                close(common + 1);
+            }
+            empty = false;
+            for (int p = common; p < wordSize; p++)
+                last[p] = (byte) (words.charAt(id, p) - 'a');
+            addEdge(wordSize - 1, last[wordSize - 1], SINK);
+        }
+
+        /**
+         * @return The root node
+         */
+        int finish() {
+            if (!empty)
+                close(1);
+            int root = register(0);
+            edgeStart[nodes] = edges;
+            return root;
+        }
+
+        /**
+         * Finishes the pending nodes from the deepest one up to depth, each one becomes an edge of its parent
+         */
+        private void close(int depth) {
+            for (int d = wordSize - 1; d >= depth; d--) {
+                int node = register(d);
+                pendingSizes[d] = 0;
+                addEdge(d - 1, last[d - 1], node);
+            }
+        }
+
+        private void addEdge(int depth, byte letter, int target) {
+            int n = pendingSizes[depth]++;
+            pendingLetters[depth][n] = letter;
+            pendingTargets[depth][n] = target;
+        }
+
+        /**
+         * @return The finished node equal to the pending node at depth, new if there is none yet
+         */
+        private int register(int depth) {
+            int n = pendingSizes[depth];
+            Signature signature = new Signature(Arrays.copyOf(pendingLetters[depth], n),
+                    Arrays.copyOf(pendingTargets[depth], n));
+            Integer existing = registry.get(signature);
+            if (existing != null)
+                return existing;
+
+            int node = nodes++;
+            if (nodes + 1 > wordCounts.length) {
+                edgeStart = Arrays.copyOf(edgeStart, (nodes + 1) * 2);
+                wordCounts = Arrays.copyOf(wordCounts, (nodes + 1) * 2);
+                letterMasks = Arrays.copyOf(letterMasks, (nodes + 1) * 2);
+                positionMasks = Arrays.copyOf(positionMasks, (nodes + 1) * 2 * wordSize);
+            }
+            if (edges + n > edgeLetters.length) {
+                edgeLetters = Arrays.copyOf(edgeLetters, (edges + n) * 2);
+                edgeTargets = Arrays.copyOf(edgeTargets, (edges + n) * 2);
+            }
+            edgeStart[node] = edges;
+            for (int e = 0; e < n; e++) {
+                int target = signature.targets[e];
+                edgeLetters[edges] = signature.letters[e];
+                edgeTargets[edges++] = target;
+                wordCounts[node] += wordCounts[target];
+                letterMasks[node] |= 1 << signature.letters[e] | letterMasks[target];
+                positionMasks[node * wordSize + depth] |= 1 << signature.letters[e];
+                for (int p = depth + 1; p < wordSize; p++)
+                    positionMasks[node * wordSize + p] |= positionMasks[target * wordSize + p];
+            }
+            registry.put(signature, node);
+            return node;
+        }
+    }
+
+    private static final class Signature {
+        final byte[] letters;
+        final int[] targets;
+        private final int hash;
+
+        Signature(byte[] letters, int[] targets) {
+            this.letters = letters;
+            this.targets = targets;
+            this.hash = 31 * Arrays.hashCode(letters) + Arrays.hashCode(targets);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Signature))
+                return false;
+            Signature s = (Signature) o;
+            return Arrays.equals(letters, s.letters) && Arrays.equals(targets, s.targets);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    public int getWordSize() {
+        return wordSize;
+    }
+
+    /**
+     * @return The number of words
+     */
+    public int size() {
+        return wordCounts[root];
+    }
+
+    /**
+     * @return The number of nodes, the end of every word included
+     */
+    public int getNodeCount() {
+        return wordCounts.length;
+    }
+
+    public int getEdgeCount() {
+        return edgeLetters.length;
+    }
+}
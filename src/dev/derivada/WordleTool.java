@@ -3,9 +3,14 @@ package dev.derivada;
 
 import java.io.*;
 import java.lang.reflect.Array;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.ForkJoinTask;
-import java.util.stream.Stream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
 /**
  * Wordle Tool by derivadas
@@ -29,11 +34,20 @@ public class WordleTool {
             't', 'u', 'v', 'w', 'x', 'y', 'z'};
     private static final int[] primes = {2, 3, 5, 7, 11, 13, 17, 19, 23, 29, 31, 37, 41, 43, 47, 53, 59, 61, 67, 71, 73,
             79, 83, 89, 97, 101};
+    // Longest words whose primes value fits a long, 101^9 < Long.MAX_VALUE < 101^10
+    static final int MAX_PRIMES_WORD_SIZE = 9;
 
-    private static String[] words;
-    private static int[] wordValues;
+    // Everything built on the words of the current size, replaced as a whole by setWordSize(). A query reads it once
+    // and runs on that snapshot even if the size changes meanwhile (see DictionaryIndex)
+    private static volatile DictionaryIndex dictionary;
+    private static int maxRounds;
+    private static PatternMatrix patternMatrix;
+    private static DecisionTree decisionTree;
 
-    private static Clue[] sortedClues;
+    // Text dictionary in use, its words (read on the first compile) and the word sizes already loaded
+    private static Path dictionaryPath;
+    private static WordList wordList;
+    private static final Map<Integer, BinaryDictionary> compiledDictionaries = new HashMap<>();
 
     static {
         DEFAULT_CLUES = new ArrayList<>();
@@ -46,6 +60,11 @@ public class WordleTool {
     public static void main(String[] args) {
         Locale.setDefault(Locale.ENGLISH);
         loadConfig();
+        // Must be set before the first use of Metrics, see its docs
+        if (Boolean.parseBoolean(config.getProperty("metrics", "false")))
+            System.setProperty("wordle.metrics", "true");
+        if (Metrics.ENABLED)
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.print(Metrics.snapshot())));
         if (!setup()) {
             System.out.println("Data preprocessing failed!");
             return;
@@ -69,6 +88,55 @@ public class WordleTool {
             case 2:
                 repeatedTestPrimes(test_size, number_of_tests, time_between_tests);
                 break;
+            case 3:
+                repeatedTestBitmask(test_size, number_of_tests, time_between_tests);
+                break;
+            case 4:
+                repeatedTest("CLUE INDEX ALGORITHM V1", () -> dictionary.getClueIndex().solve(DEFAULT_CLUES, 0),
+                        test_size, number_of_tests, time_between_tests);
+                break;
+            case 5:
+                repeatedTestSession(test_size, number_of_tests, time_between_tests);
+                break;
+            case 6:
+                patternMatrixTest();
+                break;
+            case 7:
+                rankingTest(number_of_tests);
+                break;
+            case 8:
+                simulationTest(number_of_tests);
+                break;
+            case 9:
+                wordSizesTest();
+                break;
+            case 10:
+                queryCacheTest(test_size, number_of_tests, time_between_tests);
+                break;
+            case 11:
+                startServer();
+                break;
+            case 12:
+                batchTest(test_size, number_of_tests);
+                break;
+            case 13:
+                topTest(test_size, number_of_tests);
+                break;
+            case 14:
+                decisionTreeTest(number_of_tests);
+                break;
+            case 15:
+                backendTest(test_size, number_of_tests);
+                break;
+            case 16:
+                multiBoardTest(number_of_tests);
+                break;
+            case 17:
+                wordQueryTest(test_size, number_of_tests);
+                break;
+            case 18:
+                registryTest(test_size, number_of_tests, time_between_tests);
+                break;
             default:
                 System.out.println("Couldn't recognize test mode!");
                 break;
@@ -78,104 +146,747 @@ public class WordleTool {
     }
 
     private static void repeatedTest(int test_size, int number_of_tests, int time_between_tests) {
-        String[] results = null;
-        System.out.println("--- REPEATED ITERATIONS TEST ---");
-        System.out.println("--- BASIC ALGORITHM V2 ---");
-        System.out.println("Test size: " + test_size);
-        System.out.println("Number of tests: " + test_size);
-        System.out.println("Time between tests: " + time_between_tests + " ms");
-        System.out.println("test | total time of test | average iteration time");
-        double avgTestTime = 0;
-        double avgIterTime = 0;
-        long[] testTimes = new long[number_of_tests];
-        double[] avgIterTimes = new double[number_of_tests];
+        repeatedTest("BASIC ALGORITHM V2", () -> solveTrivial(DEFAULT_CLUES, 0),
+                test_size, number_of_tests, time_between_tests);
+    }
+
+    private static void repeatedTestPrimes(int test_size, int number_of_tests, int time_between_tests) {
+        // Sort the clues in the order they should be applied
+        List<Clue> clues = sortClues(DEFAULT_CLUES);
+        int[] clueTypes = Clue.types(clues);
+        char[] clueLetters = Clue.letters(clues);
+
+        // Convert clueLetters to get adequate indexes in the primes array
+        int[] clueLettersInt = new int[clueLetters.length];
+        for (int i = 0; i < clueLetters.length; i++)
+            clueLettersInt[i] = (int) clueLetters[i] - 97;
+
+        // Word ids into the same buffer every time, Strings only for printing
+        WordTable words = dictionary.getWords();
+        int[] result = new int[words.size()];
+        repeatedTest("PRIMES ALGORITHM V1", () -> solveMultithread(clueTypes, clueLetters, clueLettersInt, result),
+                () -> words.get(result, solveMultithread(clueTypes, clueLetters, clueLettersInt, result)),
+                test_size, number_of_tests, time_between_tests);
+    }
+
+    private static void repeatedTestBitmask(int test_size, int number_of_tests, int time_between_tests) {
+        int[] clueTypes = Clue.types(DEFAULT_CLUES);
+        char[] clueLetters = Clue.letters(DEFAULT_CLUES);
+        BitmaskSolver bitmaskSolver = dictionary.getSolver();
+        repeatedTest("BITMASK ALGORITHM V1", () -> bitmaskSolver.solve(clueTypes, clueLetters, 0),
+                test_size, number_of_tests, time_between_tests);
+    }
+
+    private static void repeatedTestSession(int test_size, int number_of_tests, int time_between_tests) {
+        // Round 1 plays the gray letters of DEFAULT_CLUES, only round 2 (the rest of them) is timed
+        List<Clue> firstRound = new ArrayList<>(), secondRound = new ArrayList<>();
+        for (Clue c : DEFAULT_CLUES)
+            (c.getType() == -1 ? firstRound : secondRound).add(c);
+        GameSession session = newGameSession();
+        session.play(firstRound);
+        System.out.println("Candidates after round 1: " + session.getCandidateCount());
+        repeatedTest("GAME SESSION ROUND 2", () -> {
+                    session.play(secondRound);
+                    String[] results = session.getWords(0);
+                    session.undo();
+                    return results;
+                },
+                test_size, number_of_tests, time_between_tests);
+    }
+
+    private static void patternMatrixTest() {
+        System.out.println("--- PATTERN MATRIX TEST ---");
+        System.out.println("Matrix path: " + config.getProperty("pattern-matrix-path", "patterns.bin"));
+        long startTime = System.currentTimeMillis();
+        PatternMatrix matrix = getPatternMatrix();
+        if (matrix == null)
+            return;
+        System.out.printf("Loaded %d x %d patterns in %d ms\n", matrix.size(), matrix.size(),
+                System.currentTimeMillis() - startTime);
+
+        // Patterns of the first word against the rest, as a sanity check
+        WordTable words = dictionary.getWords();
+        int n = Math.min(10, words.size());
+        for (int i = 0; i < n; i++) {
+            System.out.println(words.get(0) + " -> " + words.get(i) + ": " + Feedback.toString(matrix.get(0, i), matrix.getWordSize()));
+        }
+    }
+
+    private static void rankingTest(int number_of_tests) {
+        System.out.println("--- GUESS RANKING TEST ---");
+        PatternMatrix matrix = getPatternMatrix();
+        if (matrix == null)
+            return;
+        DictionaryIndex current = dictionary;
+        WordTable words = current.getWords();
+        GuessRanker ranker = new GuessRanker(matrix, ForkJoinPool.commonPool());
+        int[] allWords = new int[words.size()];
+        for (int i = 0; i < allWords.length; i++)
+            allWords[i] = i;
+        HardMode hardMode = isExpertMode() ? current.getHardMode() : null;
+        int[] candidates = new int[words.size()];
+        int[] guesses = new int[words.size()];
+        System.out.println("Hard mode: " + (hardMode != null));
+
+        // First round (no clues) and the default clues
+        List<List<Clue>> tests = List.of(List.of(), DEFAULT_CLUES);
+        for (List<Clue> clues : tests) {
+            int n = current.getSolver().solve(Clue.types(clues), Clue.letters(clues), candidates);
+            int guessCount = allWords.length;
+            System.arraycopy(allWords, 0, guesses, 0, guessCount);
+            if (hardMode != null)
+                guessCount = hardMode.legalGuesses(HardMode.hints(clues), guesses);
+            System.out.println("Clues: " + clues + ", " + n + " candidates, " + guessCount + " guesses");
+            int[] best = null;
+            for (int i = 0; i < number_of_tests; i++) {
+                long startTime = System.nanoTime();
+                best = ranker.rank(candidates, n, guesses, guessCount, 10);
+                System.out.printf("TEST %d | %.2f ms\n", i, (System.nanoTime() - startTime) / 1e6);
+            }
+            printRanking(ranker, words, best, candidates, n);
+        }
+    }
 
+    private static void simulationTest(int number_of_tests) {
+        System.out.println("--- FULL GAME SIMULATION TEST ---");
+        PatternMatrix matrix = getPatternMatrix();
+        if (matrix == null)
+            return;
+        DictionaryIndex current = dictionary;
+        int[] allWords = new int[current.getWords().size()];
+        for (int i = 0; i < allWords.length; i++)
+            allWords[i] = i;
+
+        String strategyName = config.getProperty("simulation-strategy", "entropy");
+        GuessStrategy strategy;
+        switch (strategyName) {
+            case "entropy":
+                strategy = new EntropyStrategy(new GuessRanker(matrix, ForkJoinPool.commonPool()), allWords,
+                        isExpertMode() ? current.getHardMode() : null);
+                break;
+            case "first":
+                strategy = session -> session.getCandidate(0);
+                break;
+            case "tree":
+                if (isExpertMode()) {
+                    System.out.println("The decision tree covers normal mode only, set expert-mode=false");
+                    return;
+                }
+                DecisionTree tree = getDecisionTree(false);
+                if (tree == null)
+                    return;
+                strategy = new TreeStrategy(tree, new EntropyStrategy(new GuessRanker(matrix, ForkJoinPool.commonPool()), allWords));
+                break;
+            default:
+                System.out.println("Couldn't recognize simulation strategy: " + strategyName);
+                return;
+        }
+        System.out.println("Strategy: " + strategyName);
+        System.out.println("Hard mode: " + isExpertMode());
+        System.out.println("Max rounds: " + maxRounds);
+
+        GameSimulator simulator = new GameSimulator(current.getSolver(), matrix, maxRounds);
         for (int i = 0; i < number_of_tests; i++) {
-            System.out.printf("TEST %d | ", i);
-            long startTime, stopTime;
-            startTime = System.currentTimeMillis();
-            // Save first iteration results
-            results = solveTrivial(DEFAULT_CLUES, 0);
-            for (int j = 1; j < test_size; j++) {
-                solveTrivial(DEFAULT_CLUES, 0);
+            System.out.printf("TEST %d\n", i);
+            simulator.run(allWords, strategy).print();
+        }
+    }
+
+    /**
+     * Builds or loads the decision tree and plays every answer with it, a lookup per round instead of a ranking
+     */
+    private static void decisionTreeTest(int number_of_tests) {
+        System.out.println("--- DECISION TREE TEST ---");
+        if (isExpertMode()) {
+            System.out.println("The decision tree covers normal mode only, set expert-mode=false");
+            return;
+        }
+        PatternMatrix matrix = getPatternMatrix();
+        if (matrix == null)
+            return;
+        System.out.println("Tree path: " + config.getProperty("tree-path", "tree.bin"));
+        long startTime = System.currentTimeMillis();
+        DecisionTree tree = getDecisionTree(true);
+        if (tree == null)
+            return;
+        System.out.printf("Loaded in %d ms | width %d | %d nodes (%d bytes) | %.4f expected guesses | %d failures\n",
+                System.currentTimeMillis() - startTime, tree.getWidth(), tree.getNodeCount(), tree.getByteSize(),
+                tree.getAverageGuesses(), tree.getFailures());
+
+        DictionaryIndex current = dictionary;
+        int[] allWords = new int[current.getWords().size()];
+        for (int i = 0; i < allWords.length; i++)
+            allWords[i] = i;
+        GuessStrategy strategy = new TreeStrategy(tree, new EntropyStrategy(new GuessRanker(matrix, ForkJoinPool.commonPool()), allWords));
+        GameSimulator simulator = new GameSimulator(current.getSolver(), matrix, maxRounds);
+        for (int i = 0; i < number_of_tests; i++) {
+            System.out.printf("TEST %d\n", i);
+            simulator.run(allWords, strategy).print();
+        }
+    }
+
+    /**
+     * Plays multi-board games (boards answers per game, random) with the joint ranking, then compares one ranking of
+     * the second round against ranking each board on its own
+     */
+    private static void multiBoardTest(int number_of_tests) {
+        System.out.println("--- MULTI-BOARD TEST ---");
+        PatternMatrix matrix = getPatternMatrix();
+        if (matrix == null)
+            return;
+        int boards, boardRounds, games;
+        try {
+            boards = Integer.parseInt(config.getProperty("boards", "4"));
+            boardRounds = Integer.parseInt(config.getProperty("board-rounds", "9"));
+            games = Integer.parseInt(config.getProperty("board-games", "200"));
+        } catch (NumberFormatException err) {
+            System.out.println("Couldn't parse multi-board parameters, check config file!");
+            err.printStackTrace();
+            return;
+        }
+        if (boards <= 0 || boards > GuessRanker.MAX_BOARDS) {
+            System.out.println("Boards must be in [1, " + GuessRanker.MAX_BOARDS + "]");
+            return;
+        }
+        System.out.printf("Boards: %d | Max rounds: %d | Games: %d\n", boards, boardRounds, games);
+
+        DictionaryIndex current = dictionary;
+        WordTable words = current.getWords();
+        int[] allWords = new int[words.size()];
+        for (int i = 0; i < allWords.length; i++)
+            allWords[i] = i;
+        GuessRanker ranker = new GuessRanker(matrix, ForkJoinPool.commonPool());
+        MultiBoardStrategy strategy = new MultiBoardStrategy(ranker, allWords);
+        Random random = new Random(42);
+        int[][] answers = new int[games][boards];
+        for (int[] game : answers) {
+            for (int b = 0; b < boards; b++)
+                game[b] = random.nextInt(words.size());
+        }
+
+        GameSimulator simulator = new GameSimulator(current.getSolver(), matrix, boardRounds);
+        for (int i = 0; i < number_of_tests; i++) {
+            System.out.printf("TEST %d\n", i);
+            simulator.run(answers, strategy).print();
+        }
+
+        // Second round of the first game: one pass over the union against one ranking per board
+        MultiBoardSession session = new MultiBoardSession(current.getSolver(), current.getWordSize(), boards,
+                boardRounds);
+        int first = strategy.nextGuess(session);
+        int[] patterns = new int[boards];
+        for (int b = 0; b < boards; b++)
+            patterns[b] = matrix.get(first, answers[0][b]);
+        session.play(first, patterns, matrix);
+        int[][] candidates = new int[boards][];
+        int[] counts = new int[boards];
+        for (int b = 0; b < boards; b++) {
+            candidates[b] = new int[session.getBoard(b).getCandidateCount()];
+            counts[b] = session.getBoard(b).getCandidates(candidates[b]);
+        }
+        System.out.println("Round 2 candidates per board: " + Arrays.toString(counts));
+        for (int i = 0; i < number_of_tests; i++) {
+            long startTime = System.nanoTime();
+            ranker.rankBoards(candidates, counts, allWords, allWords.length, 1);
+            long joint = System.nanoTime() - startTime;
+            startTime = System.nanoTime();
+            for (int b = 0; b < boards; b++)
+                ranker.rank(candidates[b], counts[b], allWords, allWords.length, 1);
+            long separate = System.nanoTime() - startTime;
+            System.out.printf("TEST %d | joint ranking: %.2f ms | one ranking per board: %.2f ms\n", i, joint / 1e6,
+                    separate / 1e6);
+        }
+    }
+
+    /**
+     * Keeps running until the process is stopped, see SolverServer
+     */
+    private static void startServer() {
+        System.out.println("--- SOLVER SERVER ---");
+        DictionaryIndex current = dictionary;
+        // Ranking needs the pattern matrix, only available up to 5 letters
+        GuessRanker ranker = null;
+        DecisionTree tree = null;
+        if (current.getWordSize() <= Feedback.MAX_BYTE_WORD_SIZE) {
+            PatternMatrix matrix = getPatternMatrix();
+            if (matrix != null)
+                ranker = new GuessRanker(matrix, ForkJoinPool.commonPool());
+        }
+        // The tree only covers normal mode, /next answers 503 without it
+        if (current.getWordSize() <= Feedback.MAX_BYTE_WORD_SIZE && !isExpertMode())
+            tree = getDecisionTree(false);
+        try {
+            SolverServer server = new SolverServer(WordleTool::getDictionary, current, ranker, isExpertMode(), tree,
+                    openDictionaryRegistry(),
+                    Integer.parseInt(config.getProperty("server-port", "8080")),
+                    Integer.parseInt(config.getProperty("server-max-requests", "64")));
+            server.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1)));
+            System.out.println("Listening on http://localhost:" + server.getPort() + "/ (solve, rank, batch, next and words)");
+        } catch (IOException | IllegalArgumentException err) {
+            System.out.println("Couldn't start the server, check config file!");
+            err.printStackTrace();
+        }
+    }
+
+    /**
+     * Full scans against the first top-n words only, and how soon the published words arrive
+     */
+    private static void topTest(int test_size, int number_of_tests) {
+        System.out.println("--- TOP N TEST ---");
+        int top;
+        try {
+            top = Integer.parseInt(config.getProperty("top-n", "20"));
+        } catch (NumberFormatException err) {
+            System.out.println("Couldn't parse top n, check config file!");
+            err.printStackTrace();
+            return;
+        }
+        DictionaryIndex current = dictionary;
+        WordTable words = current.getWords();
+        ParallelSolver parallelSolver = current.getParallelSolver();
+        List<Clue> sorted = sortClues(DEFAULT_CLUES);
+        int[] clueTypes = Clue.types(sorted);
+        char[] clueLetters = Clue.letters(sorted);
+        int[] clueLettersInt = new int[clueLetters.length];
+        for (int i = 0; i < clueLetters.length; i++)
+            clueLettersInt[i] = clueLetters[i] - 'a';
+        int[] result = new int[words.size()];
+
+        System.out.println("Top: " + top);
+        System.out.println("test | optimized all | optimized top | multithread all | multithread top | first published | all published (ms per query)");
+        for (int i = 0; i < number_of_tests; i++) {
+            long startTime = System.nanoTime();
+            for (int j = 0; j < test_size; j++)
+                solveOptimized(clueTypes, clueLetters, clueLettersInt, 0, result);
+            double optimizedAll = (System.nanoTime() - startTime) / 1e6 / test_size;
+            startTime = System.nanoTime();
+            for (int j = 0; j < test_size; j++)
+                solveOptimized(clueTypes, clueLetters, clueLettersInt, top, result);
+            double optimizedTop = (System.nanoTime() - startTime) / 1e6 / test_size;
+            startTime = System.nanoTime();
+            for (int j = 0; j < test_size; j++)
+                parallelSolver.solve(clueTypes, clueLetters, clueLettersInt, 0, result);
+            double multithreadAll = (System.nanoTime() - startTime) / 1e6 / test_size;
+            startTime = System.nanoTime();
+            for (int j = 0; j < test_size; j++)
+                parallelSolver.solve(clueTypes, clueLetters, clueLettersInt, top, result);
+            double multithreadTop = (System.nanoTime() - startTime) / 1e6 / test_size;
+
+            // Whole result published, one word requested at a time
+            long first = 0, all = 0;
+            for (int j = 0; j < test_size; j++) {
+                long[] firstTime = new long[1];
+                CountDownLatch complete = new CountDownLatch(1);
+                startTime = System.nanoTime();
+                publishMultithread(clueTypes, clueLetters, clueLettersInt, 0).subscribe(new Flow.Subscriber<>() {
+                    Flow.Subscription subscription;
+
+                    public void onSubscribe(Flow.Subscription subscription) {
+                        this.subscription = subscription;
+                        subscription.request(1);
+                    }
+
+                    public void onNext(String word) {
+                        if (firstTime[0] == 0)
+                            firstTime[0] = System.nanoTime();
+                        subscription.request(1);
+                    }
+
+                    public void onError(Throwable err) {
+                        err.printStackTrace();
+                        complete.countDown();
+                    }
+
+                    public void onComplete() {
+                        complete.countDown();
+                    }
+                });
+                try {
+                    complete.await();
+                } catch (InterruptedException err) {
+                    System.out.println("Tests interrupted");
+                    return;
+                }
+                all += System.nanoTime() - startTime;
+                first += firstTime[0] == 0 ? 0 : firstTime[0] - startTime;
             }
-            stopTime = System.currentTimeMillis();
-            testTimes[i] = stopTime - startTime;
-            avgIterTimes[i] = (double) testTimes[i] / test_size;
-            System.out.printf("%d ms | ", testTimes[i]);
-            System.out.printf("%.4f ms\n", avgIterTimes[i]);
+            System.out.printf("TEST %d | %.4f | %.4f | %.4f | %.4f | %.4f | %.4f\n", i, optimizedAll, optimizedTop,
+                    multithreadAll, multithreadTop, first / 1e6 / test_size, all / 1e6 / test_size);
+        }
+        printResults(words.get(result, solveOptimized(clueTypes, clueLetters, clueLettersInt, top, result)), 10, 100);
+    }
+
+    private static void batchTest(int test_size, int number_of_tests) {
+        System.out.println("--- BATCH TEST ---");
+        DictionaryIndex current = dictionary;
+        Clue[] sortedClues = current.getSortedClues();
+        // Random games: 1 to 4 rounds of clues, each round adds 2 clues to the previous one
+        Random random = new Random(42);
+        List<List<Clue>> queries = new ArrayList<>(test_size);
+        while (queries.size() < test_size) {
+            List<Clue> clues = new ArrayList<>();
+            int rounds = 1 + random.nextInt(4);
+            for (int r = 0; r < rounds && queries.size() < test_size; r++) {
+                clues.add(sortedClues[random.nextInt(sortedClues.length)]);
+                clues.add(sortedClues[random.nextInt(sortedClues.length)]);
+                queries.add(new ArrayList<>(clues));
+            }
+        }
+        System.out.println("Queries: " + queries.size());
+        System.out.println("test | batch | separate multithread");
+        int[] buffer = new int[current.getWords().size()];
+        int[][] separate = new int[queries.size()][];
+        for (int i = 0; i < number_of_tests; i++) {
+            long startTime = System.nanoTime();
+            int[][] results = current.getBatchSolver().solve(queries);
+            long batchTime = System.nanoTime() - startTime;
+
+            startTime = System.nanoTime();
+            for (int q = 0; q < queries.size(); q++) {
+                List<Clue> sorted = sortClues(queries.get(q));
+                char[] clueLetters = Clue.letters(sorted);
+                int[] clueLettersInt = new int[clueLetters.length];
+                for (int j = 0; j < clueLetters.length; j++)
+                    clueLettersInt[j] = clueLetters[j] - 'a';
+                int n = solveMultithread(Clue.types(sorted), clueLetters, clueLettersInt, buffer);
+                separate[q] = Arrays.copyOf(buffer, n);
+            }
+            long separateTime = System.nanoTime() - startTime;
+            int batchFound = 0, separateFound = 0;
+            for (int q = 0; q < queries.size(); q++) {
+                batchFound += results[q].length;
+                separateFound += separate[q].length;
+            }
+            System.out.printf("TEST %d | %.2f ms (%d words found) | %.2f ms (%d words found)\n", i, batchTime / 1e6,
+                    batchFound, separateTime / 1e6, separateFound);
+            // Same words query by query, not only the same total
+            int mismatches = 0;
+            for (int q = 0; q < queries.size(); q++) {
+                if (!Arrays.equals(results[q], separate[q])) {
+                    if (mismatches++ < 10)
+                        System.out.println("Batch found " + results[q].length + " words, multithread "
+                                + separate[q].length + ", clues: " + queries.get(q));
+                }
+            }
+            if (mismatches > 0)
+                System.out.println(mismatches + " of " + queries.size() + " queries don't match");
+        }
+    }
+
+    /**
+     * Random wildcard, exclusion and anagram queries (built from random words) on the word trie against a scan of the
+     * dictionary, with the share of the trie nodes each search enters
+     */
+    private static void wordQueryTest(int test_size, int number_of_tests) {
+        System.out.println("--- WORD QUERY TEST ---");
+        DictionaryIndex current = dictionary;
+        WordTable words = current.getWords();
+        WordTrie wordTrie = current.getTrie();
+        int wordSize = current.getWordSize();
+        System.out.printf("Trie: %d words | %d nodes | %d edges\n", wordTrie.size(), wordTrie.getNodeCount(),
+                wordTrie.getEdgeCount());
+        String[] kinds = {"wildcard", "exclusions", "anagram", "anagram with blank"};
+        Random random = new Random(42);
+        WordQuery[][] queries = new WordQuery[kinds.length][test_size];
+        for (int q = 0; q < test_size; q++) {
+            String word = words.get(random.nextInt(words.size()));
+            // Ex: "?r??e"
+            WordQuery wildcard = new WordQuery(wordSize).fix(wordSize - 1, word.charAt(wordSize - 1));
+            if (wordSize > 1)
+                wildcard.fix(1, word.charAt(1));
+            queries[0][q] = wildcard;
+            // A Wordle game: yellow first letter, green last one, three gray letters
+            WordQuery exclusions = new WordQuery(wordSize).exclude(0, word.charAt(0)).atLeast(word.charAt(0), 1)
+                    .fix(wordSize - 1, word.charAt(wordSize - 1));
+            for (int gray = 0; gray < 3; ) {
+                char letter = letters[random.nextInt(letters.length)];
+                if (word.indexOf(letter) < 0) {
+                    exclusions.atMost(letter, 0);
+                    gray++;
+                }
+            }
+            queries[1][q] = exclusions;
+            queries[2][q] = WordQuery.anagram(word);
+            queries[3][q] = WordQuery.anagram(word.substring(0, wordSize - 1) + '?');
+        }
+
+        System.out.println("test | query | trie | scan (us per query) | words found | nodes entered per query");
+        int[] result = new int[words.size()];
+        for (int i = 0; i < number_of_tests; i++) {
+            for (int k = 0; k < kinds.length; k++) {
+                long startTime = System.nanoTime();
+                long found = 0;
+                for (WordQuery query : queries[k])
+                    found += wordTrie.find(query, result, 0);
+                double trie = (System.nanoTime() - startTime) / 1e3 / test_size;
+                startTime = System.nanoTime();
+                long scanned = 0;
+                for (WordQuery query : queries[k]) {
+                    for (int w = 0; w < words.size(); w++)
+                        scanned += query.matches(words, w) ? 1 : 0;
+                }
+                double scan = (System.nanoTime() - startTime) / 1e3 / test_size;
+                long visits = 0;
+                for (WordQuery query : queries[k])
+                    visits += wordTrie.countVisits(query);
+                System.out.printf("TEST %d | %s | %.2f | %.2f | %d | %.1f (%.2f%% of the nodes)\n", i, kinds[k], trie,
+                        scan, found, (double) visits / test_size, 100.0 * visits / test_size / wordTrie.getNodeCount());
+                if (found != scanned)
+                    System.out.println("The trie found " + found + " words, the scan " + scanned);
+            }
+        }
+    }
+
+    /**
+     * Loads every dictionary of the registry, then keeps querying them from several threads, number_of_tests times
+     * time_between_tests apart. Editing a dictionary file meanwhile shows the reload, the queries never stop for it
+     */
+    private static void registryTest(int test_size, int number_of_tests, int time_between_tests) {
+        System.out.println("--- DICTIONARY REGISTRY TEST ---");
+        long startTime = System.nanoTime();
+        DictionaryRegistry registry = openDictionaryRegistry();
+        if (registry == null)
+            return;
+        System.out.printf("Loaded in %.2f ms\n", (System.nanoTime() - startTime) / 1e6);
+        System.out.println("language | word size | words | generation");
+        for (String language : registry.getLanguages()) {
+            for (int size : registry.getWordSizes()) {
+                DictionaryIndex index = registry.get(language, size);
+                System.out.printf("%s | %d | %d | %d\n", language, size, index.getWords().size(), index.getGeneration());
+            }
+        }
+
+        // test_size wildcard queries per round, each one on the index current when it starts
+        List<String> languages = new ArrayList<>(registry.getLanguages());
+        int[] sizes = registry.getWordSizes();
+        for (int i = 0; i < number_of_tests; i++) {
+            startTime = System.nanoTime();
+            long found = IntStream.range(0, test_size).parallel().mapToLong(q -> {
+                DictionaryIndex index = registry.get(languages.get(q % languages.size()),
+                        sizes[q / languages.size() % sizes.length]);
+                return index.getTrie().count(new WordQuery(index.getWordSize()).fix(0, letters[q % letters.length]));
+            }).sum();
+            long generations = 0;
+            for (String language : languages) {
+                for (int size : sizes)
+                    generations += registry.get(language, size).getGeneration();
+            }
+            System.out.printf("TEST %d | %d queries | %.2f ms | %d words found | generations %d\n", i, test_size,
+                    (System.nanoTime() - startTime) / 1e6, found, generations);
             try {
                 Thread.sleep(time_between_tests);
             } catch (InterruptedException err) {
-                System.out.println("Tests interrupted");
-                return;
+                err.printStackTrace();
+                break;
             }
         }
+        registry.close();
+    }
+
+    /**
+     * The Java and native backends (see SolverBackend) on the same queries, one by one and in a single batch
+     */
+    private static void backendTest(int test_size, int number_of_tests) {
+        System.out.println("--- SOLVER BACKEND TEST ---");
+        List<SolverBackend> backends = new ArrayList<>();
+        backends.add(JavaBackend.optimized());
+        DictionaryIndex current = dictionary;
+        WordTable words = current.getWords();
+        backends.add(JavaBackend.multithread(current.getParallelSolver()));
+        Path library = Path.of(config.getProperty("native-library", "cimpl/libwordle.so"));
+        try {
+            backends.add(SolverBackend.ofNative(library, words, 1));
+            backends.add(SolverBackend.ofNative(library, words, Math.max(2, Runtime.getRuntime().availableProcessors())));
+        } catch (UnsupportedOperationException | IllegalArgumentException err) {
+            // Also the JDK and library errors, the Java backends still run
+            System.out.println("Native backend not available: " + err.getMessage());
+            System.out.println("Build it with make -C cimpl and the native module with JDK 22 (or 21, then run with"
+                    + " --enable-preview), and add native/target/classes to the class path");
+        }
+
+        // Random clues of every type
+        Random random = new Random(42);
+        List<Clue> clues = Arrays.asList(current.getSortedClues());
+        int[][] clueTypes = new int[test_size][];
+        char[][] clueLetters = new char[test_size][];
+        for (int q = 0; q < test_size; q++) {
+            List<Clue> query = new ArrayList<>();
+            int count = 1 + random.nextInt(4);
+            for (int i = 0; i < count; i++)
+                query.add(clues.get(random.nextInt(clues.size())));
+            clueTypes[q] = Clue.types(query);
+            clueLetters[q] = Clue.letters(query);
+        }
+
+        // Batches of up to 256 queries, the result buffer holds a whole dictionary per query
+        int batchSize = Math.min(256, test_size);
+        int[][][] batchTypes = new int[(test_size + batchSize - 1) / batchSize][][];
+        char[][][] batchLetters = new char[batchTypes.length][][];
+        for (int b = 0; b < batchTypes.length; b++) {
+            batchTypes[b] = Arrays.copyOfRange(clueTypes, b * batchSize, Math.min(test_size, (b + 1) * batchSize));
+            batchLetters[b] = Arrays.copyOfRange(clueLetters, b * batchSize, Math.min(test_size, (b + 1) * batchSize));
+        }
+
+        System.out.println("Queries: " + test_size + ", batches of " + batchSize);
+        System.out.println("test | backend | one by one | batch (ms per query) | words found");
+        int[] result = new int[words.size()];
+        int[] batchResult = new int[batchSize * words.size()];
+        int[] counts = new int[batchSize];
+        long expected = -1;
         for (int i = 0; i < number_of_tests; i++) {
-            avgTestTime += testTimes[i];
-            avgIterTime += avgIterTimes[i];
+            for (SolverBackend backend : backends) {
+                long startTime = System.nanoTime();
+                long found = 0;
+                for (int q = 0; q < test_size; q++)
+                    found += backend.solve(clueTypes[q], clueLetters[q], 0, result);
+                double single = (System.nanoTime() - startTime) / 1e6 / test_size;
+                startTime = System.nanoTime();
+                for (int b = 0; b < batchTypes.length; b++)
+                    backend.solveBatch(batchTypes[b], batchLetters[b], 0, batchResult, counts);
+                double batch = (System.nanoTime() - startTime) / 1e6 / test_size;
+                System.out.printf("TEST %d | %s | %.4f | %.4f | %d\n", i, backend.getName(), single, batch, found);
+                if (expected >= 0 && found != expected)
+                    System.out.println("Backend " + backend.getName() + " found " + found + " words, expected " + expected);
+                expected = found;
+            }
         }
-        avgTestTime = avgTestTime / number_of_tests;
-        avgIterTime = avgIterTime / number_of_tests;
+        for (SolverBackend backend : backends)
+            backend.close();
+    }
 
-        System.out.printf("AVERAGE: %.4f ms | %.4f ms\n", avgTestTime, avgIterTime);
+    private static void queryCacheTest(int test_size, int number_of_tests, int time_between_tests) {
+        // DEFAULT_CLUES, then DEFAULT_CLUES plus one more clue, like the next round of a game that started with them
+        QueryCache queryCache = dictionary.getQueryCache();
+        List<List<Clue>> queries = new ArrayList<>();
+        queries.add(DEFAULT_CLUES);
+        for (Clue c : dictionary.getSortedClues()) {
+            List<Clue> query = new ArrayList<>(DEFAULT_CLUES);
+            query.add(c);
+            queries.add(query);
+        }
+        int[] next = {0};
+        repeatedTest("QUERY CACHE V1", () -> queryCache.solve(queries.get(next[0]++ % queries.size()), 0),
+                test_size, number_of_tests, time_between_tests);
+        System.out.printf("Cache: %d hits, %d subset hits, %d misses, %d results (%d words)\n", queryCache.getHits(),
+                queryCache.getSubsetHits(), queryCache.getMisses(), queryCache.size(), queryCache.getCachedWords());
+    }
 
-        assert results != null;
-        printResults(results, 10, 100);
+    private static void wordSizesTest() {
+        System.out.println("--- WORD SIZES TEST ---");
+        int original = dictionary.getWordSize();
+        int[] clueTypes = Clue.types(DEFAULT_CLUES);
+        char[] clueLetters = Clue.letters(DEFAULT_CLUES);
+        System.out.println("size | switch time | words | matches | primes solvers mismatches");
+        for (String size : config.getProperty("word-sizes", "4,5,6,7,8").split(",")) {
+            int word_size;
+            try {
+                word_size = Integer.parseInt(size.trim());
+            } catch (NumberFormatException err) {
+                System.out.println("Couldn't parse word sizes, check config file!");
+                err.printStackTrace();
+                break;
+            }
+            long start = System.nanoTime();
+            if (!setWordSize(word_size))
+                continue;
+            double switchTime = (System.nanoTime() - start) / 1e6;
+            DictionaryIndex current = dictionary;
+            int matches = current.getSolver().solve(clueTypes, clueLetters, new int[current.getWords().size()]);
+            int mismatches = primesMismatches(100);
+            System.out.printf("%d | %.4f ms | %d | %d | %d\n", word_size, switchTime, current.getWords().size(), matches,
+                    mismatches);
+        }
+        setWordSize(original);
     }
 
-    private static void repeatedTestPrimes(int test_size, int number_of_tests, int time_between_tests) {
-        String[] results = null;
+    /**
+     * Checks the primes solvers against the bitmask solver on random clues of every type of the current word size, the
+     * parallel one enough times to also run its compiled matchers (see ClueCompiler)
+     *
+     * @return The number of queries where a primes solver found other words, each one is printed
+     */
+    private static int primesMismatches(int queries) {
+        Random random = new Random(42);
+        DictionaryIndex current = dictionary;
+        Clue[] sortedClues = current.getSortedClues();
+        int[] expected = new int[current.getWords().size()];
+        int[] result = new int[current.getWords().size()];
+        int mismatches = 0;
+        for (int q = 0; q < queries; q++) {
+            List<Clue> clues = new ArrayList<>();
+            int count = 1 + random.nextInt(4);
+            for (int i = 0; i < count; i++)
+                clues.add(sortedClues[random.nextInt(sortedClues.length)]);
+            int[] clueTypes = Clue.types(clues);
+            char[] clueLetters = Clue.letters(clues);
+            int[] clueLettersInt = new int[clueLetters.length];
+            for (int i = 0; i < clueLetters.length; i++)
+                clueLettersInt[i] = clueLetters[i] - 'a';
+            int n = current.getSolver().solve(clueTypes, clueLetters, expected);
+
+            boolean mismatch = false;
+            int found = solveOptimized(clueTypes, clueLetters, clueLettersInt, result);
+            if (!Arrays.equals(expected, 0, n, result, 0, found)) {
+                System.out.println("Optimized solver found " + found + " words, expected " + n + ", clues: " + clues);
+                mismatch = true;
+            }
+            for (int i = 0; i < ClueCompiler.COMPILE_THRESHOLD; i++) {
+                found = solveMultithread(clueTypes, clueLetters, clueLettersInt, result);
+                if (!Arrays.equals(expected, 0, n, result, 0, found)) {
+                    System.out.println("Multithread solver found " + found + " words, expected " + n + ", clues: " + clues);
+                    mismatch = true;
+                    break;
+                }
+            }
+            if (mismatch)
+                mismatches++;
+        }
+        return mismatches;
+    }
+
+    private static boolean isExpertMode() {
+        return Boolean.parseBoolean(config.getProperty("expert-mode", "false"));
+    }
+
+    private static void printRanking(GuessRanker ranker, WordTable words, int[] best, int[] candidates, int n) {
+        int[] histogram = new int[Feedback.patternCount(words.getWordSize())];
+        System.out.println("Best guesses:");
+        for (int i = 0; i < best.length; i++) {
+            System.out.printf("  %d) %s\t%.4f bits\n", i + 1, words.get(best[i]),
+                    ranker.entropy(best[i], candidates, n, histogram));
+        }
+    }
+
+    private static void repeatedTest(String algorithmName, Supplier<String[]> solver,
+                                     int test_size, int number_of_tests, int time_between_tests) {
+        repeatedTest(algorithmName, solver::get, solver, test_size, number_of_tests, time_between_tests);
+    }
+
+    /**
+     * @param iteration: the timed code
+     * @param results:   the words found by iteration, only called once at the end for printing
+     */
+    private static void repeatedTest(String algorithmName, Runnable iteration, Supplier<String[]> results,
+                                     int test_size, int number_of_tests, int time_between_tests) {
         System.out.println("--- REPEATED ITERATIONS TEST ---");
-        System.out.println("--- PRIMES ALGORITHM V1 ---");
+        System.out.println("--- " + algorithmName + " ---");
         System.out.println("Test size: " + test_size);
-        System.out.println("Number of tests: " + test_size);
+        System.out.println("Number of tests: " + number_of_tests);
         System.out.println("Time between tests: " + time_between_tests + " ms");
         System.out.println("test | total time of test | average iteration time");
         double avgTestTime = 0;
         double avgIterTime = 0;
         long[] testTimes = new long[number_of_tests];
         double[] avgIterTimes = new double[number_of_tests];
-        // Prepare input for test
-        int[] clueTypes = new int[DEFAULT_CLUES.size()];
-        char[] clueLetters = new char[DEFAULT_CLUES.size()];
-        for (int i = 0; i < DEFAULT_CLUES.size(); i++) {
-            clueTypes[i] = DEFAULT_CLUES.get(i).getType();
-            clueLetters[i] = DEFAULT_CLUES.get(i).getLetter();
-        }
-        // Sort the clueTypes and clueLetters parallel arrays by the sortedClues order
-        int a = 0;
-        int[] clueTypesSorted = new int[clueTypes.length];
-        char[] clueLettersSorted = new char[clueLetters.length];
-
-        for (Clue c : sortedClues) {
-            for (int i = 0; i < clueLetters.length; i++) {
-                if (c.getLetter() == clueLetters[i] && c.getType() == clueTypes[i]) {
-                    clueTypesSorted[a] = clueTypes[i];
-                    clueLettersSorted[a] = clueLetters[i];
-                    a++;
-                    break;
-                }
-            }
-        }
-        clueLetters = clueLettersSorted;
-        clueTypes = clueTypesSorted;
-
-        // Convert clueLetters to get adequate indexes in the primes array
-        int[] clueLettersInt = new int[clueLetters.length];
-        for (int i = 0; i < clueLetters.length; i++)
-            clueLettersInt[i] = (int) clueLetters[i] - 97;
-
 
         for (int i = 0; i < number_of_tests; i++) {
             System.out.printf("TEST %d | ", i);
             System.out.flush();
             long startTime, stopTime;
             startTime = System.currentTimeMillis();
-            // Save first iteration results
-            results = solveMultithread(clueTypes, clueLetters, clueLettersInt,0);
-            for (int j = 1; j < test_size; j++) {
-                solveMultithread(clueTypes, clueLetters,clueLettersInt, 0);
+            for (int j = 0; j < test_size; j++) {
+                iteration.run();
             }
             stopTime = System.currentTimeMillis();
             testTimes[i] = stopTime - startTime;
@@ -199,8 +910,7 @@ public class WordleTool {
 
         System.out.printf("AVERAGE: %.4f ms | %.4f ms\n", avgTestTime, avgIterTime);
 
-        assert results != null;
-        printResults(results, 10, 100);
+        printResults(results.get(), 10, 100);
     }
 
     private static void printResults(String[] results, int wordsPerLine, int maxLines) {
@@ -210,8 +920,9 @@ public class WordleTool {
         } else {
             float percentageFound = 100;
 
-            if (words.length > 0) {
-                percentageFound = ((float) n / (float) words.length) * 100.0f;
+            int size = dictionary.getWords().size();
+            if (size > 0) {
+                percentageFound = ((float) n / (float) size) * 100.0f;
             }
             System.out.printf("%d results found for the test (%.2f%% of the dictionary):\n", n, percentageFound);
             for (int i = 0; i < Math.min(maxLines, n); i++) {
@@ -230,90 +941,192 @@ public class WordleTool {
     /**
      * This method serves multiple purposes for optimizing the main solving algorithm
      * <p>
-     * 1. Stores the dictionary on an array so you don't have to open the file every time you run solve()
+     * 1. Stores the dictionary on an array so you don't have to open the file every time you run solve(). The whole
+     * dictionary is read once (see WordList), split by word length, so setWordSize() can switch to another length later
      * <p>
      * 2. Creates an array parallel to the dictionary that saves a numeric value computed
      * by multiplying each letter with number n (in dictionary order)
      * present on the word by the n-th prime number. Ex: house -> h = primes['h'-104] * primes [104-'o'] ...
+     * The values are longs, 101^9 is the largest product that fits, so the word size is at most MAX_PRIMES_WORD_SIZE
+     * Also builds the bitmask solver (letter presence mask and packed positions for each word)
      * <p>
-     * 3. Sorts all clues by filtered size (how many words satisfy them on the current
+     * 3. Builds the clue index, a bitset of the matching words for each possible clue, and the clue statistics
+     * <p>
+     * 4. Sorts all clues by filtered size (how many words satisfy them on the current
      * dictionary). Ex: 'a' is not in the word less common than 'x' is on the word on the 4th position
+     * <p>
+     * 5. Builds the word trie (see WordTrie) for the wildcard and anagram queries, it is fast enough to build it on
+     * every run
+     * <p>
+     * Parts 1 to 3 are saved to a binary dictionary next to the text one (dictionary-path + "." + word size + ".bin")
+     * and loaded from there on later runs, as long as the text dictionary doesn't change
      *
      * @return A boolean indicating if the preprocessing was successful
      */
 
     private static boolean setup() {
-        // Part 1. Reads the dictionary and puts it inside the words array
-        boolean flag = true;
+        int word_size;
+        try {
+            word_size = Integer.parseInt(config.getProperty("word-size"));
+            maxRounds = Integer.parseInt(config.getProperty("max-rounds"));
+        } catch (NumberFormatException err) {
+            System.out.println("Couldn't parse word size or max rounds, check config file!");
+            err.printStackTrace();
+            return false;
+        }
+
         File dict = new File(config.getProperty("dictionary-path"));
         if (!dict.exists()) {
             System.out.println("Couldn't find dictionary at path: " + System.getProperty("user.dir") + config.getProperty("dictionary-path"));
             return false;
         }
+        // Another dictionary, forget the words of the previous one
+        dictionaryPath = dict.toPath();
+        wordList = null;
+        compiledDictionaries.clear();
+        return setWordSize(word_size);
+    }
 
-        FileReader fr = null;
-        BufferedReader br = null;
-        ArrayList<String> lines = new ArrayList<>();
-        String entry;
-        int lines_read = 0;
-
+    /**
+     * Needs setup(). Switches the solvers to the words of another size of the same dictionary. The dictionary isn't
+     * read again: the sizes used before are kept in memory, the others are loaded from their binary dictionary or
+     * compiled from the words read by setup()
+     *
+     * @return A boolean indicating if the switch was successful
+     */
+    static synchronized boolean setWordSize(int word_size) {
+        if (word_size <= 0 || word_size > MAX_PRIMES_WORD_SIZE) {
+            System.out.println("Word size must be between 1 and " + MAX_PRIMES_WORD_SIZE + ", got " + word_size);
+            return false;
+        }
+        int cacheEntries;
+        long cacheWords;
         try {
-            fr = new FileReader(dict);
-            br = new BufferedReader(fr);
-            while ((entry = br.readLine()) != null) {
-                lines.add(entry);
+            cacheEntries = Integer.parseInt(config.getProperty("query-cache-entries", "1024"));
+            cacheWords = Long.parseLong(config.getProperty("query-cache-words", "1048576"));
+        } catch (NumberFormatException err) {
+            System.out.println("Couldn't parse query cache limits, check config file!");
+            err.printStackTrace();
+            return false;
+        }
+        if (cacheEntries <= 0 || cacheWords <= 0) {
+            System.out.println("Query cache limits must be positive, check config file!");
+            return false;
+        }
+        BinaryDictionary compiled = compiledDictionaries.get(word_size);
+        boolean fresh = false;
+        if (compiled == null) {
+            Path binary = Path.of(dictionaryPath + "." + word_size + ".bin");
+            if (Files.exists(binary)) {
+                SetupEvent event = SetupEvent.begin("load", word_size);
+                try {
+                    compiled = BinaryDictionary.load(binary, dictionaryPath, word_size);
+                    if (compiled != null)
+                        event.end(compiled.getWords().size());
+                } catch (IOException err) {
+                    System.out.println("Couldn't load binary dictionary, reading the text one!");
+                    err.printStackTrace();
+                }
             }
-        } catch (IOException ioErr) {
-            System.out.println("Error while reading dictionary file (line " + lines_read + "): ");
-            ioErr.printStackTrace();
-            flag = false;
-        } finally {
+            if (compiled == null) {
+                compiled = compileDictionary(word_size);
+                if (compiled == null)
+                    return false;
+                fresh = true;
+                SetupEvent event = SetupEvent.begin("write", word_size);
+                try {
+                    compiled.write(binary, dictionaryPath);
+                    event.end(compiled.getWords().size());
+                } catch (IOException err) {
+                    System.out.println("Couldn't save binary dictionary!");
+                    err.printStackTrace();
+                }
+            }
+            compiledDictionaries.put(word_size, compiled);
+        }
+
+        // Parts 4 and 5 and the solvers, all built before the switch so a failed one leaves the previous size in
+        // place (see DictionaryIndex)
+        DictionaryIndex built = DictionaryIndex.build(config.getProperty("language", "en"), dictionaryPath, 1,
+                compiled, ForkJoinPool.commonPool(), cacheEntries, cacheWords);
+        if (fresh)
+            System.out.println(Arrays.toString(built.getSortedClues()));
+
+        dictionary = built;
+        config.setProperty("word-size", String.valueOf(word_size));
+        // The pattern matrix and the decision tree are for the previous size
+        patternMatrix = null;
+        decisionTree = null;
+        return true;
+    }
+
+    /**
+     * Parts 1 to 3 of setup() for one word size. Reads the dictionary the first time
+     *
+     * @return The compiled dictionary, null if the dictionary couldn't be read
+     */
+    private static BinaryDictionary compileDictionary(int word_size) {
+        // Part 1. Reads the dictionary, see WordList
+        if (wordList == null) {
+            SetupEvent event = SetupEvent.begin("read", word_size);
             try {
-                if (br != null)
-                    br.close();
-                if (fr != null)
-                    fr.close();
+                wordList = WordList.read(dictionaryPath);
+                event.end(wordList.get(word_size).size());
             } catch (IOException err) {
-                System.out.println("Couldn't close dictionary file!");
+                System.out.println("Error while reading dictionary file: ");
                 err.printStackTrace();
+                return null;
             }
         }
-        words = new String[lines.size()];
-        words = lines.toArray(words);
+        return compile(wordList.get(word_size));
+    }
 
-        // Stop if we found an IO error
-        if (!flag)
-            return false;
+    /**
+     * Parts 2 and 3 of setup() on any words of one size, also used by DictionaryRegistry
+     *
+     * @return The words with their encodings, ready to be saved or to build a DictionaryIndex
+     */
+    static BinaryDictionary compile(WordTable words) {
+        int word_size = words.getWordSize();
 
         // Part 2. Creates the wordValues array using functional programming
-        wordValues = Stream.of(words).mapToInt(
-                s -> s.chars().
-                        map(a -> primes[a - 97]).
+        SetupEvent event = SetupEvent.begin("encode", word_size);
+        long[] wordValues = IntStream.range(0, words.size()).mapToLong(
+                i -> IntStream.range(0, word_size).
+                        mapToLong(p -> primes[words.charAt(i, p) - 97]).
                         reduce((a, b) -> a * b).
                         orElse(0)
         ).toArray();
+        BitmaskSolver bitmaskSolver = new BitmaskSolver(words);
+        event.end(words.size());
 
-        // Part 3. Generates all possible clues and sorts them by the above criteria
-        int word_size = 0, i = 0;
-        Clue clue;
-        try {
-            word_size = Integer.parseInt(config.getProperty("word-size"));
-        } catch (NumberFormatException err) {
-            System.out.println("Couldn't parse word size, check config file!");
-            err.printStackTrace();
-            return false;
-        }
-        sortedClues = new Clue[letters.length * (word_size + 2)];
-        for (char c : letters) {
-            for (int n = -1; n <= word_size; n++) {
-                sortedClues[i] = new Clue(n, c);
-                i++;
-            }
-        }
-        // Probably inefficient but im a hipster
-        Arrays.sort(sortedClues, Comparator.comparingInt(c -> c.applyToList(words).length));
-        System.out.println(Arrays.toString(sortedClues));
-        return true;
+        // Part 3. Builds the clue index and the clue statistics
+        event = SetupEvent.begin("index", word_size);
+        ClueIndex clueIndex = new ClueIndex(words);
+        ClueStats clueStats = ClueStats.compute(words);
+        event.end(words.size());
+        return new BinaryDictionary(word_size, words, wordValues, bitmaskSolver.getLetterMasks(),
+                bitmaskSolver.getPositions(), clueStats.getClueCounts(), clueStats.getPairCounts(),
+                clueIndex.getBitsets());
+    }
+
+    /**
+     * Loads the config and runs setup() with another dictionary, used by the benchmarks
+     */
+    static boolean setup(String dictionaryPath) {
+        loadConfig();
+        config.setProperty("dictionary-path", dictionaryPath);
+        return setup();
+    }
+
+    /**
+     * Needs preprocessing
+     *
+     * @return The clues in the order they should be applied (most selective first, given the clues before them), see
+     * ClueStats.order()
+     */
+    static List<Clue> sortClues(List<Clue> clues) {
+        return dictionary.getClueStats().order(clues);
     }
 
     /**
@@ -323,66 +1136,101 @@ public class WordleTool {
      * @param maxLength: the maximum length fetched, unlimited for values <= 0
      * @return A string array with all the valid words
      */
-    private static String[] solveTrivial(List<Clue> clues, int maxLength) {
+    static String[] solveTrivial(List<Clue> clues, int maxLength) {
 
         // AVG ITER TIME: 0.11ms
-        String[] solution = Arrays.copyOf(words, words.length);
+        long start = Metrics.start();
+        String[] solution = getWords().clone();
         if (maxLength <= 0) {
             maxLength = Integer.MAX_VALUE;
         }
 
-        for (Clue sortedClue : sortedClues) {
-            if (clues.contains(sortedClue)) {
-                solution = sortedClue.applyToList(solution);
-                // System.out.println("processing clue: " + sortedClues[i] + "\n" + "new filtered size: " + sortedClues[i].applyToList(solution).length);
-            }
+        for (Clue sortedClue : sortClues(clues)) {
+            solution = sortedClue.applyToList(solution);
+            // System.out.println("processing clue: " + sortedClue + "\n" + "new filtered size: " + solution.length);
         }
 
+        Metrics.query(Metrics.TRIVIAL, start, clues.size(), solution.length);
         return Arrays.copyOfRange(solution, 0, Math.min(solution.length, maxLength));
     }
 
-    private static String[] solveOptimized(int[] clueTypes, char[] clueLetters, int maxLength) {
+    /**
+     * Needs preprocessing. Orders the clues (see sortClues()) and builds the Strings of the valid words, the overloads
+     * with a result buffer take the clues already ordered and allocate nothing
+     */
+    static String[] solveOptimized(int[] clueTypes, char[] clueLetters, int maxLength) {
+        DictionaryIndex current = dictionary;
+        // Apply the query order to clueTypes
+        List<Clue> sorted = current.getClueStats().order(Clue.list(clueTypes, clueLetters));
+        char[] sortedLetters = Clue.letters(sorted);
+        // Convert clueLetters to get adequate indexes in the primes array
+        int[] sortedLettersInt = new int[sortedLetters.length];
+        for (int i = 0; i < sortedLetters.length; i++)
+            sortedLettersInt[i] = (int) sortedLetters[i] - 97;
+        WordTable words = current.getWords();
+        int[] result = new int[words.size()];
+        int n = solveOptimized(words, current.getWordValues(), Clue.types(sorted), sortedLetters, sortedLettersInt,
+                maxLength, result);
+        return words.get(result, n);
+    }
+
+    /**
+     * Needs preprocessing
+     *
+     * @param clueTypes:      in the order they are checked, see sortClues()
+     * @param clueLettersInt: indexes of clueLetters in the primes array
+     * @param result:         output buffer for the dictionary indexes of the valid words, at least as big as the
+     *                        dictionary
+     * @return The number of valid words written to result
+     */
+    static int solveOptimized(int[] clueTypes, char[] clueLetters, int[] clueLettersInt, int[] result) {
+        return solveOptimized(clueTypes, clueLetters, clueLettersInt, 0, result);
+    }
+
+    /**
+     * Needs preprocessing. Stops the scan once maxLength valid words are found
+     *
+     * @param maxLength: the maximum length fetched, unlimited for values <= 0
+     * @param result:    output buffer for the dictionary indexes of the valid words, at least maxLength long (or as big
+     *                   as the dictionary)
+     * @return The number of valid words written to result
+     */
+    static int solveOptimized(int[] clueTypes, char[] clueLetters, int[] clueLettersInt, int maxLength, int[] result) {
+        DictionaryIndex current = dictionary;
+        return solveOptimized(current.getWords(), current.getWordValues(), clueTypes, clueLetters, clueLettersInt,
+                maxLength, result);
+    }
+
+    /**
+     * solveOptimized() on any dictionary, the clues are checked in the given order
+     *
+     * @param wordValues: primes values of the words, parallel to words
+     */
+    static int solveOptimized(WordTable words, long[] wordValues, int[] clueTypes, char[] clueLetters,
+                              int[] clueLettersInt, int maxLength, int[] result) {
         // AVG ITER TIME: 0.0966ms
-        assert clueTypes.length == clueLetters.length;
-        assert words.length == wordValues.length;
+        long start = Metrics.start();
+        assert clueTypes.length == clueLetters.length && clueLetters.length == clueLettersInt.length;
+        assert words.size() == wordValues.length;
         if (maxLength <= 0) {
             maxLength = Integer.MAX_VALUE;
         }
 
-        String[] solution = new String[words.length];
-        String word;
-        int value, p, n = 0;
-
-        // Apply sort order to clueTypes
-        int a = 0;
-        int[] clueTypesSorted = new int[clueTypes.length];
-        char[] clueLettersSorted = new char[clueLetters.length];
+        long value;
+        int p, n = 0;
 
-        for (Clue c : sortedClues) {
-            for (int i = 0; i < clueLetters.length; i++) {
-                if (c.getLetter() == clueLetters[i] && c.getType() == clueTypes[i]) {
-                    clueTypesSorted[a] = clueTypes[i];
-                    clueLettersSorted[a] = clueLetters[i];
-                    a++;
-                    break;
-                }
-            }
-        }
-        clueLetters = clueLettersSorted;
-        clueTypes = clueTypesSorted;
-
-        // Convert clueLetters to get adequate indexes in the primes array
-        int[] clueLettersInt = new int[clueLetters.length];
-        for (int i = 0; i < clueLetters.length; i++)
-            clueLettersInt[i] = (int) clueLetters[i] - 97;
+        // Per clue counters, only filled with metrics on (see Metrics)
+        long[] evaluated = Metrics.ENABLED ? new long[clueTypes.length] : null;
+        long[] passed = Metrics.ENABLED ? new long[clueTypes.length] : null;
 
         // Sort the clues arrays
         WORD:
-        for (int i = 0; i < words.length; i++) {
-            word = words[i];
+        for (int i = 0; i < words.size() && n < maxLength; i++) {
             for (int j = 0; j < clueLetters.length; j++) {
                 value = wordValues[i];
                 p = primes[clueLettersInt[j]];
+                if (Metrics.ENABLED)
+                    evaluated[j]++;
                 switch (clueTypes[j]) {
                     case -1:
                         if ((value % p == 0))
@@ -393,25 +1241,204 @@ public class WordleTool {
                             continue WORD;
                         break;
                     default:
-                        if ((value % p != 0) && (word.indexOf(clueLetters[j]) != clueTypes[j]))
+                        // Positions start at 1
+                        if (!words.hasLetterAt(i, clueTypes[j] - 1, clueLetters[j]))
                             continue WORD;
                         break;
                 }
+                if (Metrics.ENABLED)
+                    passed[j]++;
             }
-            solution[n] = word;
+            result[n] = i;
             n++;
         }
 
-        return Arrays.copyOfRange(solution, 0, Math.min(n, maxLength));
+        if (Metrics.ENABLED) {
+            Metrics.clues(clueTypes, clueLetters, evaluated, passed);
+            Metrics.query(Metrics.OPTIMIZED, start, clueTypes.length, n);
+        }
+        return n;
+    }
+
+    /**
+     * Needs preprocessing
+     *
+     * @return A new game limited to max-rounds rounds, starting from the whole dictionary
+     */
+    private static GameSession newGameSession() {
+        return new GameSession(dictionary.getSolver(), maxRounds);
+    }
+
+    /**
+     * Needs preprocessing. Loads the pattern matrix from pattern-matrix-path, or computes and saves it the first time
+     *
+     * @return The pattern matrix of the dictionary, null if it couldn't be loaded or computed
+     */
+    private static synchronized PatternMatrix getPatternMatrix() {
+        if (patternMatrix == null) {
+            try {
+                patternMatrix = PatternMatrix.loadOrCompute(Path.of(config.getProperty("pattern-matrix-path", "patterns.bin")), getWords(), dictionary.getWordSize());
+            } catch (IOException | IllegalArgumentException err) {
+                System.out.println("Couldn't load or compute the pattern matrix!");
+                err.printStackTrace();
+            }
+        }
+        return patternMatrix;
+    }
+
+    /**
+     * Needs preprocessing. Loads the decision tree from tree-path. Building it can take minutes, so only test mode 14
+     * builds and saves it (tree-width guesses tried per node, see DecisionTree), the server and the simulation only
+     * load it
+     *
+     * @param build: build it if tree-path is missing or for another dictionary or settings
+     * @return The decision tree of the dictionary for max-rounds, null if it couldn't be loaded or built
+     */
+    private static synchronized DecisionTree getDecisionTree(boolean build) {
+        if (decisionTree == null) {
+            Path path = Path.of(config.getProperty("tree-path", "tree.bin"));
+            try {
+                int width = Integer.parseInt(config.getProperty("tree-width", "2"));
+                if (build) {
+                    PatternMatrix matrix = getPatternMatrix();
+                    if (matrix == null)
+                        return null;
+                    decisionTree = DecisionTree.loadOrBuild(path, getWords(), matrix, maxRounds, width,
+                            ForkJoinPool.commonPool());
+                } else if (!Files.exists(path)) {
+                    System.out.println("There is no decision tree at " + path + ", build it with test-mode=14");
+                } else {
+                    decisionTree = DecisionTree.load(path, getWords(), dictionary.getWordSize(), maxRounds, width);
+                    if (decisionTree == null)
+                        System.out.println("Decision tree at " + path + " doesn't match the dictionary or settings,"
+                                + " build it again with test-mode=14");
+                }
+            } catch (IOException | IllegalArgumentException err) {
+                // Also catches NumberFormatException
+                System.out.println("Couldn't load or build the decision tree!");
+                err.printStackTrace();
+            }
+        }
+        return decisionTree;
+    }
+
+    static String[] solveMultithread(int[] clueTypes, char[] clueLetters, int[] clueLettersInt, int maxLength) {
+        return dictionary.getParallelSolver().solve(clueTypes, clueLetters, clueLettersInt, maxLength);
+    }
+
+    /**
+     * @param result: output buffer for the dictionary indexes of the valid words, at least as big as the dictionary
+     * @return The number of valid words written to result
+     */
+    static int solveMultithread(int[] clueTypes, char[] clueLetters, int[] clueLettersInt, int[] result) {
+        return dictionary.getParallelSolver().solve(clueTypes, clueLetters, clueLettersInt, result);
+    }
+
+    /**
+     * @return The valid words in dictionary order, published while the dictionary is scanned, see
+     * ParallelSolver.publish()
+     */
+    static Flow.Publisher<String> publishMultithread(int[] clueTypes, char[] clueLetters, int[] clueLettersInt, int maxLength) {
+        return dictionary.getParallelSolver().publish(clueTypes, clueLetters, clueLettersInt, maxLength);
+    }
+
+    /**
+     * @return The words as Strings, built on the first call for each word size (the solvers work on getWordTable())
+     */
+    static String[] getWords() {
+        return dictionary.getWordStrings();
+    }
+
+    /**
+     * Needs preprocessing
+     *
+     * @return The words of the current size with everything built on them, read it once per query
+     */
+    static DictionaryIndex getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Loads the dictionaries listed in dictionaries (language:path, separated by commas) with the word-sizes sizes and
+     * starts watching them, see DictionaryRegistry
+     *
+     * @return The registry, null if a dictionary couldn't be loaded
+     */
+    static DictionaryRegistry openDictionaryRegistry() {
+        Map<String, Path> sources = new LinkedHashMap<>();
+        int[] sizes;
+        int cacheEntries;
+        long cacheWords;
+        try {
+            for (String entry : config.getProperty("dictionaries", "en:dict.txt").split(",")) {
+                int colon = entry.indexOf(':');
+                if (colon <= 0)
+                    throw new IllegalArgumentException("Dictionaries must be language:path, got " + entry);
+                sources.put(entry.substring(0, colon).trim(), Path.of(entry.substring(colon + 1).trim()));
+            }
+            sizes = Arrays.stream(config.getProperty("word-sizes", "4,5,6,7,8").split(","))
+                    .mapToInt(size -> Integer.parseInt(size.trim())).toArray();
+            cacheEntries = Integer.parseInt(config.getProperty("query-cache-entries", "1024"));
+            cacheWords = Long.parseLong(config.getProperty("query-cache-words", "1048576"));
+        } catch (IllegalArgumentException err) {
+            // Also catches NumberFormatException
+            System.out.println("Couldn't parse dictionaries, word sizes or query cache limits, check config file!");
+            err.printStackTrace();
+            return null;
+        }
+        try {
+            return DictionaryRegistry.open(sources, sizes, ForkJoinPool.commonPool(), cacheEntries, cacheWords);
+        } catch (IOException | IllegalArgumentException err) {
+            System.out.println("Couldn't load the dictionaries!");
+            err.printStackTrace();
+            return null;
+        }
+    }
+
+    static WordTrie getWordTrie() {
+        return dictionary.getTrie();
+    }
+
+    static WordTable getWordTable() {
+        return dictionary.getWords();
+    }
+
+    static long[] getWordValues() {
+        return dictionary.getWordValues();
+    }
+
+    static ClueStats getClueStats() {
+        return dictionary.getClueStats();
+    }
+
+    static Clue[] getSortedClues() {
+        return dictionary.getSortedClues();
     }
 
-    private static String[] solveMultithread(int[] clueTypes, char[] clueLetters, int[] clueLettersInt, int maxLength) {
-        List<String> solution = new ArrayList<>(words.length);
-        ParallelSolver.setup(words, wordValues, solution, clueTypes, clueLetters, clueLettersInt, maxLength);
-        ParallelSolver solver = new ParallelSolver(0, words.length);
-        solver.invoke();
-        solver.join();
-        return solver.getSolution().toArray(new String[0]);
+    static BitmaskSolver getBitmaskSolver() {
+        return dictionary.getSolver();
+    }
+
+    static BatchSolver getBatchSolver() {
+        return dictionary.getBatchSolver();
+    }
+
+    static QueryCache getQueryCache() {
+        return dictionary.getQueryCache();
+    }
+
+    static ClueIndex getClueIndex() {
+        return dictionary.getClueIndex();
+    }
+
+    /**
+     * Needs preprocessing
+     *
+     * @return A primes solver over the dictionary running on the given pool
+     */
+    static ParallelSolver newParallelSolver(ForkJoinPool pool) {
+        DictionaryIndex current = dictionary;
+        return new ParallelSolver(current.getWords(), current.getWordValues(), pool);
     }
 
     private static void loadConfig() {
@@ -434,6 +1461,22 @@ public class WordleTool {
         config.setProperty("language", "en");
         config.setProperty("expert-mode", "false");
         config.setProperty("max-rounds", "6");
+        config.setProperty("pattern-matrix-path", "patterns.bin");
+        config.setProperty("simulation-strategy", "entropy");
+        config.setProperty("tree-path", "tree.bin");
+        config.setProperty("tree-width", "2");
+        config.setProperty("boards", "4");
+        config.setProperty("board-rounds", "9");
+        config.setProperty("board-games", "200");
+        config.setProperty("word-sizes", "4,5,6,7,8");
+        config.setProperty("dictionaries", "en:dict.txt");
+        config.setProperty("query-cache-entries", "1024");
+        config.setProperty("query-cache-words", "1048576");
+        config.setProperty("server-port", "8080");
+        config.setProperty("server-max-requests", "64");
+        config.setProperty("metrics", "false");
+        config.setProperty("top-n", "20");
+        config.setProperty("native-library", "cimpl/libwordle.so");
         config.setProperty("test-mode", "1");
         config.setProperty("test-size", "1000");
         config.setProperty("number-of-tests", "1");